@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import main.utils.ActionSampler;
+
+/**
+ * Action selection from a distribution on the engine, read entry by entry as
+ * before or copied once, from a primitive array, and from a batch of
+ * distributions, row by row or in a single copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionSamplerBenchmark {
+    private static final int BATCH_SIZE = 32;
+
+    @Param({ "2", "16" })
+    public int num_of_actions;
+
+    private final Random random = new Random(0);
+
+    private NDManager manager;
+    private NDArray distribution;
+    private float[] distribution_arr;
+    private NDArray distributions;
+    private final int[] actions = new int[BATCH_SIZE];
+
+    @Setup
+    public void setup() {
+        manager = NDManager.newBaseManager();
+        distribution = manager.randomUniform(0.0f, 1.0f, new Shape(num_of_actions));
+        distribution = distribution.div(distribution.sum());
+        distribution_arr = distribution.toFloatArray();
+        distributions = manager.randomUniform(0.0f, 1.0f, new Shape(BATCH_SIZE, num_of_actions));
+        distributions = distributions.div(distributions.sum(new int[] { 1 }).reshape(BATCH_SIZE, 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public int sampleMultinomialElementwise() {
+        long size = distribution.size();
+        float rnd = random.nextFloat();
+        for (int i = 0; i < size; i++) {
+            float cut = distribution.getFloat(i);
+            if (rnd <= cut) {
+                return i;
+            }
+            rnd -= cut;
+        }
+        return (int) size - 1;
+    }
+
+    @Benchmark
+    public int sampleMultinomial() {
+        return ActionSampler.sampleMultinomial(distribution, random);
+    }
+
+    @Benchmark
+    public int sampleMultinomialArray() {
+        return ActionSampler.sampleMultinomial(distribution_arr, random);
+    }
+
+    @Benchmark
+    public int[] sampleMultinomialRows() {
+        try (NDManager submanager = manager.newSubManager()) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                NDArray row = distributions.get(i);
+                row.attach(submanager);
+                actions[i] = ActionSampler.sampleMultinomial(row, random);
+            }
+        }
+        return actions;
+    }
+
+    @Benchmark
+    public int[] sampleMultinomialBatch() {
+        return ActionSampler.sampleMultinomialBatch(distributions, random);
+    }
+}
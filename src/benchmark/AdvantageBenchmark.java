@@ -0,0 +1,141 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.index.NDIndex;
+import ai.djl.ndarray.types.Shape;
+import main.agent.GAE;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdvantageBenchmark {
+    @Param({ "200", "1000" })
+    public int episode_length;
+
+    private AdvantageEstimator agent;
+    private NDManager manager;
+    private NDArray values;
+    private NDArray rewards;
+    private float[] value_arr;
+    private float[] reward_arr;
+    private boolean[] masks;
+    private float[] returns;
+    private float[] advantages;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        float[] rewards = new float[episode_length];
+        for (int i = 0; i < episode_length; i++) {
+            rewards[i] = random.nextFloat();
+        }
+
+        agent = new AdvantageEstimator();
+        manager = NDManager.newBaseManager();
+        this.values = manager.randomNormal(new Shape(episode_length, 1));
+        this.rewards = manager.create(rewards);
+
+        this.value_arr = values.toFloatArray();
+        this.reward_arr = rewards;
+        this.masks = new boolean[episode_length];
+        for (int i = 99; i < episode_length; i += 100) {
+            masks[i] = true;
+        }
+        this.returns = new float[episode_length];
+        this.advantages = new float[episode_length];
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public void estimateAdvantage(Blackhole blackhole) {
+        try (NDManager submanager = manager.newSubManager()) {
+            values.attach(submanager);
+            rewards.attach(submanager);
+            blackhole.consume(agent.estimate(values, rewards));
+            values.attach(manager);
+            rewards.attach(manager);
+        }
+    }
+
+    /**
+     * Per-step engine calls, as estimateAdvantage was implemented before the
+     * primitive pass.
+     */
+    @Benchmark
+    public void estimateAdvantageLegacy(Blackhole blackhole) {
+        try (NDManager submanager = manager.newSubManager()) {
+            values.attach(submanager);
+            rewards.attach(submanager);
+            blackhole.consume(agent.estimateLegacy(values, rewards));
+            values.attach(manager);
+            rewards.attach(manager);
+        }
+    }
+
+    /**
+     * Backward pass over primitive arrays with an episode boundary every 100
+     * steps, without copies between the host and the engine.
+     */
+    @Benchmark
+    public void estimateAdvantagePrimitive(Blackhole blackhole) {
+        AdvantageEstimator.estimate(value_arr, reward_arr, masks, returns, advantages);
+        blackhole.consume(advantages);
+    }
+
+    private static final class AdvantageEstimator extends GAE {
+        private static final float GAMMA = 0.99f;
+        private static final float GAE_LAMBDA = 0.95f;
+
+        private AdvantageEstimator() {
+            super(4, 2, 64, GAMMA, GAE_LAMBDA, 0.001f);
+        }
+
+        private NDList estimate(NDArray values, NDArray rewards) {
+            return estimateAdvantage(values, rewards);
+        }
+
+        private static void estimate(float[] values, float[] rewards, boolean[] masks, float[] returns,
+                float[] advantages) {
+            estimateAdvantage(values, rewards, masks, 0.0f, GAMMA, GAE_LAMBDA, returns, advantages);
+        }
+
+        private NDList estimateLegacy(NDArray values, NDArray rewards) {
+            NDArray expected_returns = rewards.duplicate();
+            NDArray advantages = rewards.sub(values.squeeze());
+            for (long i = expected_returns.getShape().get(0) - 2; i >= 0; i--) {
+                NDIndex index = new NDIndex(i);
+                expected_returns.set(index, expected_returns.get(i).add(expected_returns.get(i + 1).mul(GAMMA)));
+                advantages.set(index, advantages.get(i)
+                        .add(values.get(i + 1).add(advantages.get(i + 1).mul(GAE_LAMBDA)).mul(GAMMA)));
+            }
+
+            return new NDList(expected_returns, advantages);
+        }
+    }
+}
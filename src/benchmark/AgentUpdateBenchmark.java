@@ -0,0 +1,153 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.engine.Engine;
+import ai.djl.ndarray.NDManager;
+import ai.djl.translate.TranslateException;
+import main.agent.DQN;
+import main.agent.GAE;
+import main.agent.PPO;
+import main.agent.QRDQN;
+import main.utils.Memory;
+
+/**
+ * One updateModel call per agent on the default engine. For DQN and QRDQN the
+ * batch size is the minibatch sampled from the memory, for GAE and PPO it is
+ * the length of the episode in the memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentUpdateBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 2;
+    private static final int MEMORY_SIZE = 1024;
+
+    @Param({ "64", "256" })
+    public int hidden_size;
+
+    @Param({ "32", "256", "1024" })
+    public int batch_size;
+
+    private BenchmarkDQN dqn;
+    private BenchmarkQRDQN qrdqn;
+    private BenchmarkGAE gae;
+    private BenchmarkPPO ppo;
+
+    @Setup
+    public void setup() {
+        Engine.getInstance().setRandomSeed(0);
+        Random random = new Random(0);
+
+        dqn = new BenchmarkDQN(hidden_size, batch_size);
+        qrdqn = new BenchmarkQRDQN(hidden_size, batch_size);
+        gae = new BenchmarkGAE(hidden_size);
+        ppo = new BenchmarkPPO(hidden_size);
+
+        Rollouts.fill(dqn.getMemory(), MEMORY_SIZE, DIM_OF_STATE, NUM_OF_ACTIONS, 200, random);
+        Rollouts.fill(qrdqn.getMemory(), MEMORY_SIZE, DIM_OF_STATE, NUM_OF_ACTIONS, 200, random);
+        Rollouts.fill(gae.getMemory(), batch_size, DIM_OF_STATE, NUM_OF_ACTIONS, batch_size, random);
+        Rollouts.fill(ppo.getMemory(), batch_size, DIM_OF_STATE, NUM_OF_ACTIONS, batch_size, random);
+    }
+
+    @Benchmark
+    public void updateDQN() throws TranslateException {
+        dqn.update();
+    }
+
+    @Benchmark
+    public void updateQRDQN() throws TranslateException {
+        qrdqn.update();
+    }
+
+    @Benchmark
+    public void updateGAE() throws TranslateException {
+        gae.update();
+    }
+
+    @Benchmark
+    public void updatePPO() throws TranslateException {
+        ppo.update();
+    }
+
+    private static final class BenchmarkDQN extends DQN {
+        private BenchmarkDQN(int hidden_size, int batch_size) {
+            super(DIM_OF_STATE, NUM_OF_ACTIONS, hidden_size, batch_size, 32, 0.99f, 0.001f);
+        }
+
+        private Memory getMemory() {
+            return memory;
+        }
+
+        private void update() throws TranslateException {
+            try (NDManager submanager = manager.newSubManager()) {
+                updateModel(submanager);
+            }
+        }
+    }
+
+    private static final class BenchmarkQRDQN extends QRDQN {
+        private BenchmarkQRDQN(int hidden_size, int batch_size) {
+            super(DIM_OF_STATE, NUM_OF_ACTIONS, 8, hidden_size, batch_size, 32, 0.99f, 0.001f);
+        }
+
+        private Memory getMemory() {
+            return memory;
+        }
+
+        private void update() throws TranslateException {
+            try (NDManager submanager = manager.newSubManager()) {
+                updateModel(submanager);
+            }
+        }
+    }
+
+    private static final class BenchmarkGAE extends GAE {
+        private BenchmarkGAE(int hidden_size) {
+            super(DIM_OF_STATE, NUM_OF_ACTIONS, hidden_size, 0.99f, 0.95f, 0.001f);
+        }
+
+        private Memory getMemory() {
+            return memory;
+        }
+
+        private void update() throws TranslateException {
+            try (NDManager submanager = manager.newSubManager()) {
+                updateModel(submanager, memory.getOrderedBatch(submanager));
+            }
+        }
+    }
+
+    private static final class BenchmarkPPO extends PPO {
+        private BenchmarkPPO(int hidden_size) {
+            super(DIM_OF_STATE, NUM_OF_ACTIONS, hidden_size, 0.99f, 0.95f, 0.001f, 16, 8, 0.2f);
+        }
+
+        private Memory getMemory() {
+            return memory;
+        }
+
+        private void update() throws TranslateException {
+            try (NDManager submanager = manager.newSubManager()) {
+                updateModel(submanager, memory.getOrderedBatch(submanager));
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.agent.DynaQ;
+
+/**
+ * Steps of DynaQ on a random walk over a four-dimensional box, each followed
+ * by NUM_OF_PLANNING_ITERATIONS planning updates, so that the planning updates
+ * per second are the reported throughput times NUM_OF_PLANNING_ITERATIONS. The
+ * legacy planner is the former implementation with nested arrays, kept here as
+ * a baseline for the flat uniform and prioritized sweeping planners. The
+ * background planner runs the updates on two threads, so that its throughput
+ * is the one of acting, which does not wait for planning.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DynaQPlanningBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 4;
+    private static final int NUM_OF_PLANNING_ITERATIONS = 32;
+    private static final int EPISODE_LENGTH = 200;
+
+    @Param({ "legacy", "uniform", "prioritized", "background" })
+    public String planner;
+
+    @Param({ "8", "16" })
+    public int state_resolution;
+
+    private final Random random = new Random(0);
+    private final float[] state = new float[DIM_OF_STATE];
+
+    private DynaQ agent;
+    private LegacyDynaQ legacy;
+    private int step;
+
+    @Setup
+    public void setup() {
+        double[][] state_ranges = new double[DIM_OF_STATE][];
+        for (int i = 0; i < DIM_OF_STATE; i++) {
+            state_ranges[i] = new double[] { 0.0, 1.0 };
+        }
+
+        if ("legacy".equals(planner)) {
+            legacy = new LegacyDynaQ(state_resolution, 0.1f, 0.99f, 0.1f);
+        } else if ("uniform".equals(planner)) {
+            agent = new DynaQ(state_ranges, NUM_OF_ACTIONS, state_resolution, 0.1f, 0.99f, 0.1f,
+                    NUM_OF_PLANNING_ITERATIONS);
+        } else if ("prioritized".equals(planner)) {
+            agent = new DynaQ(state_ranges, NUM_OF_ACTIONS, state_resolution, 0.1f, 0.99f, 0.1f,
+                    NUM_OF_PLANNING_ITERATIONS, 1e-4f);
+        } else {
+            agent = new DynaQ(state_ranges, NUM_OF_ACTIONS, state_resolution, 0.1f, 0.99f, 0.1f,
+                    NUM_OF_PLANNING_ITERATIONS, 2);
+        }
+        for (int i = 0; i < DIM_OF_STATE; i++) {
+            state[i] = random.nextFloat();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (agent != null) {
+            agent.close();
+        }
+    }
+
+    @Benchmark
+    public int step() {
+        int action = legacy != null ? legacy.react(state) : agent.react(state);
+
+        int dim = action % DIM_OF_STATE;
+        state[dim] = Math.min(0.999f, Math.max(0.0f, state[dim] + (action < DIM_OF_STATE / 2 ? -0.05f : 0.05f)
+                + 0.05f * (random.nextFloat() - 0.5f)));
+        step++;
+        boolean done = step % EPISODE_LENGTH == 0;
+        float reward = state[0] > 0.9f ? 1.0f : 0.0f;
+
+        if (legacy != null) {
+            legacy.collect(reward, done);
+        } else {
+            agent.collect(reward, done);
+        }
+        return action;
+    }
+
+    /**
+     * Former DynaQ on the unit box, with a float[num_of_states][num_of_actions]
+     * table, nested arrays in the empirical model, uniform planning, and a
+     * shuffle per greedy action.
+     */
+    private static final class LegacyDynaQ {
+        private final Random random = new Random(0);
+        private final int state_resolution;
+        private final int num_of_states;
+        private final float alpha;
+        private final float gamma;
+        private final float epsilon;
+        private final int[] index = new int[NUM_OF_ACTIONS];
+        private final float[][] table;
+        private final int[][] transitions;
+        private final float[][] rewards;
+        private final boolean[] visited_state_mark;
+        private final int[] visited_states;
+        private final boolean[][] visited_state_action_mark;
+        private final int[][] visited_state_actions;
+        private final int[] num_of_visited_state_action;
+        private int num_of_visited_states = 0;
+
+        private int state_prev = -1;
+        private int action_prev;
+        private float reward_prev;
+        private boolean pending = false;
+
+        private LegacyDynaQ(int state_resolution, float alpha, float gamma, float epsilon) {
+            int num_of_states = 1;
+            for (int i = 0; i < DIM_OF_STATE; i++) {
+                num_of_states *= state_resolution;
+            }
+            this.state_resolution = state_resolution;
+            this.num_of_states = num_of_states;
+            this.alpha = alpha;
+            this.gamma = gamma;
+            this.epsilon = epsilon;
+            for (int i = 0; i < NUM_OF_ACTIONS; i++) {
+                index[i] = i;
+            }
+
+            this.table = new float[num_of_states][NUM_OF_ACTIONS];
+            this.transitions = new int[num_of_states][NUM_OF_ACTIONS];
+            this.rewards = new float[num_of_states][NUM_OF_ACTIONS];
+            this.visited_state_mark = new boolean[num_of_states];
+            this.visited_states = new int[num_of_states];
+            this.visited_state_action_mark = new boolean[num_of_states][NUM_OF_ACTIONS];
+            this.visited_state_actions = new int[num_of_states][NUM_OF_ACTIONS];
+            this.num_of_visited_state_action = new int[num_of_states];
+        }
+
+        private int react(float[] state) {
+            int state_value = encodeState(state);
+            if (pending) {
+                learn(state_value, false);
+            }
+
+            int action = random.nextDouble() < epsilon || num_of_visited_states == 0
+                    ? random.nextInt(NUM_OF_ACTIONS)
+                    : getRandomMaxPolicy(state_value);
+            state_prev = state_value;
+            action_prev = action;
+            pending = true;
+            return action;
+        }
+
+        private void collect(float reward, boolean done) {
+            reward_prev = reward;
+            if (done) {
+                learn(num_of_states, true);
+                pending = false;
+            }
+        }
+
+        private void learn(int state_next, boolean done) {
+            update(state_prev, state_next, action_prev, reward_prev);
+            updateTable(state_prev, state_next, action_prev, reward_prev, done);
+            for (int i = 0; i < NUM_OF_PLANNING_ITERATIONS; i++) {
+                int[] sample = sample();
+                int next = transitions[sample[0]][sample[1]];
+                updateTable(sample[0], next, sample[1], rewards[sample[0]][sample[1]], next == num_of_states);
+            }
+        }
+
+        private void update(int state, int state_next, int action, float reward) {
+            if (!visited_state_mark[state]) {
+                visited_state_mark[state] = true;
+                visited_states[num_of_visited_states] = state;
+                num_of_visited_states++;
+            }
+            if (!visited_state_action_mark[state][action]) {
+                visited_state_action_mark[state][action] = true;
+                visited_state_actions[state][num_of_visited_state_action[state]] = action;
+                num_of_visited_state_action[state]++;
+            }
+            transitions[state][action] = state_next;
+            rewards[state][action] = reward;
+        }
+
+        private int[] sample() {
+            int state = visited_states[random.nextInt(num_of_visited_states)];
+            int action = visited_state_actions[state][random.nextInt(num_of_visited_state_action[state])];
+            return new int[] { state, action };
+        }
+
+        private void updateTable(int state, int state_next, int action, float reward, boolean last_episode) {
+            float expected_return = last_episode ? 0.0f : gamma * table[state_next][getRandomMaxPolicy(state_next)];
+            table[state][action] += alpha * (reward + expected_return - table[state][action]);
+        }
+
+        private int encodeState(float[] state) {
+            int state_value = 0;
+            for (int i = 0; i < state.length; i++) {
+                state_value = state_value * state_resolution
+                        + Math.min(state_resolution - 1, Math.max(0, (int) (state_resolution * state[i])));
+            }
+            return state_value;
+        }
+
+        private int getRandomMaxPolicy(int state) {
+            for (int i = index.length - 1; i > 0; i--) {
+                int k = random.nextInt(i + 1);
+                int tmp = index[k];
+                index[k] = index[i];
+                index[i] = tmp;
+            }
+
+            int action = -1;
+            float action_value = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < NUM_OF_ACTIONS; i++) {
+                if (action_value < table[state][index[i]]) {
+                    action_value = table[state][index[i]];
+                    action = index[i];
+                }
+            }
+            return action;
+        }
+    }
+}
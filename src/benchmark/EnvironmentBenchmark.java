@@ -0,0 +1,67 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.env.Environment;
+import main.env.cartpole.CartPole;
+import main.env.mountaincar.MountainCar;
+import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+    @Param({ "CartPole", "MountainCar" })
+    public String env_name;
+
+    private Environment env;
+    private StepResult result;
+    private int action;
+
+    @Setup
+    public void setup() {
+        env = "CartPole".equals(env_name) ? new CartPole(false) : new MountainCar(false);
+        env.seed(0);
+        result = new StepResult(env.DimOfStateSpace());
+        env.reset(result);
+    }
+
+    @Benchmark
+    public Snapshot step() {
+        Snapshot snapshot = env.step(nextAction());
+        if (snapshot.isMasked()) {
+            env.reset();
+        }
+        return snapshot;
+    }
+
+    @Benchmark
+    public StepResult stepInPlace() {
+        env.step(nextAction(), result);
+        if (result.isMasked()) {
+            env.reset(result);
+        }
+        return result;
+    }
+
+    private int nextAction() {
+        action = (action + 1) % env.NumOfActions();
+        return action;
+    }
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.Model;
+import ai.djl.engine.Engine;
+import ai.djl.inference.Predictor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.translate.NoopTranslator;
+import ai.djl.translate.TranslateException;
+import main.agent.model.DistributionValueModel;
+
+/**
+ * Throughput of the forward pass of a {@link DistributionValueModel}. The
+ * hostSynchronized benchmark adds the two scalar copies to the host that the
+ * normalization of the scores used to make on every pass, as a baseline for
+ * the inference and training passes, which keep the statistics on the engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 2;
+    private static final int HIDDEN_SIZE = 64;
+
+    @Param({ "1", "32", "256" })
+    public int batch_size;
+
+    private NDManager manager;
+    private Model model;
+    private Predictor<NDList, NDList> predictor;
+    private float[] states;
+
+    @Setup
+    public void setup() {
+        Engine.getInstance().setRandomSeed(0);
+        manager = NDManager.newBaseManager();
+        model = DistributionValueModel.newModel(manager, DIM_OF_STATE, HIDDEN_SIZE, NUM_OF_ACTIONS);
+        predictor = model.newPredictor(new NoopTranslator());
+        states = new float[batch_size * DIM_OF_STATE];
+        Rollouts.randomize(states, new Random(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        predictor.close();
+        manager.close();
+    }
+
+    @Benchmark
+    public float hostSynchronized() throws TranslateException {
+        try (NDManager submanager = manager.newSubManager()) {
+            NDArray distribution = predictor.predict(input(submanager)).get(0);
+            float mean = distribution.mean().getFloat();
+            return mean + distribution.sub(mean).pow(2).mean().getFloat();
+        }
+    }
+
+    @Benchmark
+    public NDArray inference() throws TranslateException {
+        try (NDManager submanager = manager.newSubManager()) {
+            return predictor.predict(input(submanager)).get(0);
+        }
+    }
+
+    @Benchmark
+    public NDArray training() {
+        try (NDManager submanager = manager.newSubManager()) {
+            return DistributionValueModel.forwardTraining(model, input(submanager)).get(0);
+        }
+    }
+
+    /**
+     * Upload the states to the submanager of the invocation, which then owns
+     * all the intermediate arrays of the pass.
+     * 
+     * @param submanager
+     * @return states of shape (batch size, dimension of state)
+     */
+    private NDList input(NDManager submanager) {
+        return new NDList(submanager.create(states, new Shape(batch_size, DIM_OF_STATE)));
+    }
+}
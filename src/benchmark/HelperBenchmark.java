@@ -0,0 +1,145 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import main.utils.Helper;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperBenchmark {
+    private static final int NUM_OF_ACTIONS = 4;
+    private static final int NUM_OF_ACTION_BINS = 8;
+
+    @Param({ "32", "256", "1024" })
+    public int batch_size;
+
+    private NDManager manager;
+    private NDArray scores;
+    private NDArray quantiles;
+    private int[] indexes;
+    private NDArray index_arr;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        manager = NDManager.newBaseManager();
+        scores = manager.randomNormal(new Shape(batch_size, NUM_OF_ACTIONS));
+        quantiles = manager.randomNormal(new Shape(batch_size, NUM_OF_ACTIONS, NUM_OF_ACTION_BINS));
+
+        indexes = new int[batch_size];
+        for (int i = 0; i < batch_size; i++) {
+            indexes[i] = random.nextInt(NUM_OF_ACTIONS);
+        }
+        index_arr = manager.create(indexes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public void gather2D(Blackhole blackhole) {
+        gather(scores, blackhole, Gather.INT_ARRAY);
+    }
+
+    @Benchmark
+    public void gather3D(Blackhole blackhole) {
+        gather(quantiles, blackhole, Gather.INT_ARRAY);
+    }
+
+    @Benchmark
+    public void gatherIndexes2D(Blackhole blackhole) {
+        gather(scores, blackhole, Gather.INDEX_ARRAY);
+    }
+
+    @Benchmark
+    public void gatherIndexes3D(Blackhole blackhole) {
+        gather(quantiles, blackhole, Gather.INDEX_ARRAY);
+    }
+
+    @Benchmark
+    public void gatherMask2D(Blackhole blackhole) {
+        gather(scores, blackhole, Gather.BOOLEAN_MASK);
+    }
+
+    @Benchmark
+    public void gatherMask3D(Blackhole blackhole) {
+        gather(quantiles, blackhole, Gather.BOOLEAN_MASK);
+    }
+
+    private enum Gather {
+        INT_ARRAY, INDEX_ARRAY, BOOLEAN_MASK
+    }
+
+    /**
+     * Attach the inputs to a sub manager while gathering, so that the
+     * intermediate arrays are released after each invocation.
+     * 
+     * @param arr
+     * @param blackhole
+     * @param method
+     */
+    private void gather(NDArray arr, Blackhole blackhole, Gather method) {
+        try (NDManager submanager = manager.newSubManager()) {
+            arr.attach(submanager);
+            index_arr.attach(submanager);
+            switch (method) {
+            case INT_ARRAY:
+                blackhole.consume(Helper.gather(arr, indexes));
+                break;
+            case INDEX_ARRAY:
+                blackhole.consume(Helper.gather(arr, index_arr));
+                break;
+            default:
+                blackhole.consume(gatherWithMask(arr, indexes));
+            }
+            arr.attach(manager);
+            index_arr.attach(manager);
+        }
+    }
+
+    /**
+     * Boolean mask built on the host and uploaded, as Helper.gather was
+     * implemented before building the mask on the engine.
+     * 
+     * @param arr
+     * @param indexes
+     * @return gathered array
+     */
+    private static NDArray gatherWithMask(NDArray arr, int[] indexes) {
+        boolean[][] mask = new boolean[(int) arr.size(0)][(int) arr.size(1)];
+        for (int i = 0; i < indexes.length; i++) {
+            mask[i][indexes[i]] = true;
+        }
+        NDArray boolean_mask = arr.getManager().create(mask);
+        for (int i = (int) boolean_mask.getShape().dimension(); i < arr.getShape().dimension(); i++) {
+            boolean_mask = boolean_mask.expandDims(i);
+        }
+
+        return arr.get(Helper.tile(boolean_mask, arr.getShape())).reshape(Shape.update(arr.getShape(), 1, 1))
+                .squeeze();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.env.cartpole.CartPole;
+import main.env.http.EnvironmentServer;
+import main.env.http.HttpEnvironment;
+import main.env.http.HttpVectorEnvironment;
+import main.utils.datatype.StepResult;
+
+/**
+ * One step of every hosted CartPole over the loopback interface: one blocking
+ * request per instance, one asynchronous request per instance in flight
+ * together, or a single batch request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpEnvironmentBenchmark {
+    @Param({ "1", "16" })
+    public int num_of_envs;
+
+    private EnvironmentServer server;
+    private HttpEnvironment[] envs;
+    private StepResult[] results;
+    private HttpVectorEnvironment vector_env;
+    private int[] actions;
+    private CompletableFuture<?>[] futures;
+
+    @Setup
+    public void setup() throws IOException {
+        server = EnvironmentServer.start(0, num_of_envs, () -> new CartPole(false), 4);
+        envs = new HttpEnvironment[num_of_envs];
+        results = new StepResult[num_of_envs];
+        for (int i = 0; i < num_of_envs; i++) {
+            envs[i] = HttpEnvironment.make(server.getAddress(), i);
+            results[i] = new StepResult(envs[i].DimOfStateSpace());
+            envs[i].reset(results[i]);
+        }
+        vector_env = HttpVectorEnvironment.make(server.getAddress());
+        vector_env.reset();
+        actions = new int[num_of_envs];
+        futures = new CompletableFuture<?>[num_of_envs];
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void step(Blackhole blackhole) {
+        for (int i = 0; i < num_of_envs; i++) {
+            envs[i].step(nextAction(i), results[i]);
+            if (results[i].isMasked()) {
+                envs[i].reset(results[i]);
+            }
+            blackhole.consume(results[i]);
+        }
+    }
+
+    @Benchmark
+    public void stepAsync(Blackhole blackhole) {
+        for (int i = 0; i < num_of_envs; i++) {
+            int index = i;
+            futures[i] = envs[i].stepAsync(nextAction(i), results[i]).thenAccept(result -> {
+                if (result.isMasked()) {
+                    envs[index].reset(result);
+                }
+            });
+        }
+        CompletableFuture.allOf(futures).join();
+        blackhole.consume(results);
+    }
+
+    @Benchmark
+    public void stepBatch(Blackhole blackhole) {
+        for (int i = 0; i < num_of_envs; i++) {
+            nextAction(i);
+        }
+        blackhole.consume(vector_env.step(actions));
+    }
+
+    private int nextAction(int index) {
+        actions[index] = 1 - actions[index];
+        return actions[index];
+    }
+}
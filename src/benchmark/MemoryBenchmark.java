@@ -0,0 +1,140 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.djl.ndarray.NDManager;
+import main.utils.FrameMemory;
+import main.utils.MappedMemory;
+import main.utils.Memory;
+import main.utils.datatype.MemoryBatch;
+import main.utils.datatype.Transition;
+
+/**
+ * Replay memory throughput. Run with -prof gc to see the allocation rate per
+ * step of {@link #step()}. The layout is either the default columns, a
+ * {@link FrameMemory} storing each observation once, or a {@link MappedMemory}
+ * backed by a temporary file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 2;
+    private static final int EPISODE_LENGTH = 200;
+
+    @Param({ "4096", "1048576" })
+    public int capacity;
+
+    @Param({ "32", "256" })
+    public int batch_size;
+
+    @Param({ "heap", "frame", "mapped" })
+    public String layout;
+
+    private final Random random = new Random(0);
+    private final float[] state = new float[DIM_OF_STATE];
+
+    private Memory memory;
+    private NDManager manager;
+    private Path path;
+    private int step;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (layout) {
+        case "frame":
+            memory = new FrameMemory(capacity);
+            break;
+        case "mapped":
+            path = Files.createTempFile("replay", ".bin");
+            Files.delete(path);
+            memory = MappedMemory.open(path, capacity, DIM_OF_STATE);
+            break;
+        default:
+            memory = new Memory(capacity);
+        }
+        manager = NDManager.newBaseManager();
+        Rollouts.fill(memory, capacity, DIM_OF_STATE, NUM_OF_ACTIONS, EPISODE_LENGTH, random);
+        Rollouts.randomize(state, random);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        manager.close();
+        if (memory instanceof MappedMemory) {
+            ((MappedMemory) memory).close();
+            Files.delete(path);
+        }
+    }
+
+    @Benchmark
+    public void step() {
+        memory.setState(state);
+        memory.setAction(step % NUM_OF_ACTIONS);
+        memory.setRewardAndMask(1.0f, ++step % EPISODE_LENGTH == 0);
+    }
+
+    @Benchmark
+    public Transition[] sample() {
+        return memory.sample(batch_size);
+    }
+
+    @Benchmark
+    public void sampleBatch(Blackhole blackhole) {
+        try (NDManager submanager = manager.newSubManager()) {
+            blackhole.consume(memory.sampleBatch(batch_size, submanager));
+        }
+    }
+
+    /**
+     * The batch assembly from {@link Transition} objects which
+     * {@link Memory#sampleBatch(int, NDManager)} replaces.
+     * 
+     * @param blackhole
+     */
+    @Benchmark
+    public void sampleTransitionBatch(Blackhole blackhole) {
+        try (NDManager submanager = manager.newSubManager()) {
+            Transition[] transitions = memory.sample(batch_size);
+            float[][] states = new float[batch_size][];
+            float[][] next_states = new float[batch_size][];
+            int[] actions = new int[batch_size];
+            float[] rewards = new float[batch_size];
+            boolean[] masks = new boolean[batch_size];
+
+            for (int i = 0; i < batch_size; i++) {
+                states[i] = transitions[i].getState();
+                float[] next_state = transitions[i].getNextState();
+                next_states[i] = next_state != null ? next_state : new float[states[i].length];
+                actions[i] = transitions[i].getAction();
+                rewards[i] = transitions[i].getReward();
+                masks[i] = transitions[i].isMasked();
+            }
+
+            blackhole.consume(new MemoryBatch(submanager.create(states), submanager.create(next_states),
+                    submanager.create(actions), submanager.create(rewards), submanager.create(masks)));
+        }
+    }
+}
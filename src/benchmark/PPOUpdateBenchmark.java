@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.engine.Engine;
+import ai.djl.ndarray.NDManager;
+import ai.djl.translate.TranslateException;
+import main.agent.PPO;
+import main.utils.Memory;
+
+/**
+ * Wall time of one PPO update on a 1024-step rollout, for both minibatch
+ * samplings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PPOUpdateBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 2;
+    private static final int ROLLOUT_SIZE = 1024;
+
+    @Param({ "8", "64" })
+    public int inner_batch_size;
+
+    @Param({ "false", "true" })
+    public boolean sample_without_replacement;
+
+    private BenchmarkPPO ppo;
+
+    @Setup
+    public void setup() {
+        Engine.getInstance().setRandomSeed(0);
+        ppo = new BenchmarkPPO(inner_batch_size, sample_without_replacement);
+        Rollouts.fill(ppo.getMemory(), ROLLOUT_SIZE, DIM_OF_STATE, NUM_OF_ACTIONS, ROLLOUT_SIZE, new Random(0));
+    }
+
+    @Benchmark
+    public void update() throws TranslateException {
+        ppo.update();
+    }
+
+    private static final class BenchmarkPPO extends PPO {
+        private BenchmarkPPO(int inner_batch_size, boolean sample_without_replacement) {
+            super(DIM_OF_STATE, NUM_OF_ACTIONS, 64, 0.99f, 0.95f, 0.001f, 4, inner_batch_size, 0.2f,
+                    sample_without_replacement);
+        }
+
+        private Memory getMemory() {
+            return memory;
+        }
+
+        private void update() throws TranslateException {
+            try (NDManager submanager = manager.newSubManager()) {
+                updateModel(submanager, memory.getOrderedBatch(submanager));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.djl.Model;
+import ai.djl.engine.Engine;
+import ai.djl.inference.Predictor;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.translate.NoopTranslator;
+import ai.djl.translate.TranslateException;
+import main.agent.model.DistributionValueModel;
+import main.agent.model.MLPPolicy;
+import main.agent.model.ScoreModel;
+import main.utils.ActionSampler;
+
+/**
+ * Latency of a single decision with the DJL predictor and with the exported
+ * {@link MLPPolicy}. The sample time mode reports the percentiles of the
+ * distribution, e.g. p0.50 and p0.99 per decision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyLatencyBenchmark {
+    private static final int DIM_OF_STATE = 4;
+    private static final int NUM_OF_ACTIONS = 2;
+
+    @Param({ "score", "distribution_value" })
+    public String model_type;
+
+    @Param({ "64", "256" })
+    public int hidden_size;
+
+    private final Random random = new Random(0);
+    private final float[] state = new float[DIM_OF_STATE];
+
+    private NDManager manager;
+    private Model model;
+    private Predictor<NDList, NDList> predictor;
+    private MLPPolicy policy;
+    private boolean is_distribution;
+
+    @Setup
+    public void setup() {
+        Engine.getInstance().setRandomSeed(0);
+        manager = NDManager.newBaseManager();
+        is_distribution = "distribution_value".equals(model_type);
+        if (is_distribution) {
+            model = DistributionValueModel.newModel(manager, DIM_OF_STATE, hidden_size, NUM_OF_ACTIONS);
+            policy = DistributionValueModel.export(model);
+        } else {
+            model = ScoreModel.newModel(manager, DIM_OF_STATE, hidden_size, NUM_OF_ACTIONS);
+            policy = ScoreModel.export(model);
+        }
+        predictor = model.newPredictor(new NoopTranslator());
+        Rollouts.randomize(state, random);
+    }
+
+    @TearDown
+    public void tearDown() {
+        predictor.close();
+        manager.close();
+    }
+
+    @Benchmark
+    public int predictor() throws TranslateException {
+        try (NDManager submanager = manager.newSubManager()) {
+            NDArray output = predictor.predict(new NDList(submanager.create(state))).get(0);
+            return is_distribution ? ActionSampler.sampleMultinomial(output, random)
+                    : ActionSampler.epsilonGreedy(output, random, 0.1f);
+        }
+    }
+
+    @Benchmark
+    public int mlpPolicy() {
+        return is_distribution ? policy.sampleMultinomial(state, random) : policy.epsilonGreedy(state, random, 0.1f);
+    }
+}
@@ -0,0 +1,85 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.djl.ndarray.NDManager;
+import main.utils.Memory;
+import main.utils.PrioritizedMemory;
+import main.utils.datatype.MemoryBatch;
+
+/**
+ * Sample and priority update throughput of a full replay memory, prioritized or
+ * not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PrioritizedMemoryBenchmark {
+    private static final int DIM_OF_STATE = 4;
+
+    @Param({ "1048576" })
+    public int capacity;
+
+    @Param({ "32", "256" })
+    public int batch_size;
+
+    @Param({ "true", "false" })
+    public boolean prioritized;
+
+    private final Random random = new Random(0);
+
+    private Memory memory;
+    private NDManager manager;
+    private int[] indexes;
+    private float[] errors;
+
+    @Setup
+    public void setup() {
+        memory = prioritized ? new PrioritizedMemory(capacity, 0.6f, 0.4f) : new Memory(capacity);
+        manager = NDManager.newBaseManager();
+        Rollouts.fill(memory, capacity, DIM_OF_STATE, 2, 200, random);
+
+        indexes = new int[batch_size];
+        errors = new float[batch_size];
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Benchmark
+    public void sampleBatch(Blackhole blackhole) {
+        try (NDManager submanager = manager.newSubManager()) {
+            MemoryBatch batch = memory.sampleBatch(batch_size, submanager);
+            blackhole.consume(batch);
+        }
+    }
+
+    @Benchmark
+    public void updatePriorities() {
+        for (int i = 0; i < batch_size; i++) {
+            indexes[i] = random.nextInt(capacity);
+            errors[i] = random.nextFloat();
+        }
+        memory.updatePriorities(indexes, errors);
+    }
+}
@@ -0,0 +1,44 @@
+package benchmark;
+
+import java.util.Random;
+
+import main.utils.Memory;
+
+final class Rollouts {
+    private Rollouts() {
+    }
+
+    /**
+     * Fill the memory with random transitions, terminating an episode every
+     * episode_length steps.
+     * 
+     * @param memory
+     * @param size
+     * @param dim_of_state
+     * @param num_of_actions
+     * @param episode_length
+     * @param random
+     */
+    static void fill(Memory memory, int size, int dim_of_state, int num_of_actions, int episode_length,
+            Random random) {
+        float[] state = new float[dim_of_state];
+        float[] state_next = new float[dim_of_state];
+        randomize(state, random);
+
+        for (int i = 0; i < size; i++) {
+            boolean done = (i + 1) % episode_length == 0;
+            randomize(state_next, random);
+            memory.add(state, done ? null : state_next, random.nextInt(num_of_actions), random.nextFloat(), done);
+
+            float[] tmp = state;
+            state = state_next;
+            state_next = tmp;
+        }
+    }
+
+    static void randomize(float[] array, Random random) {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = (float) random.nextGaussian();
+        }
+    }
+}
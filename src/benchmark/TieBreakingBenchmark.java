@@ -0,0 +1,91 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.utils.ActionSampler;
+
+/**
+ * Greedy action of a row of a flat Q-table with random tie-breaking, by the
+ * former shuffle of the actions before a scan, and by reservoir sampling. With
+ * all the scores tied, as in the unvisited rows of DynaQ, every action is a
+ * tie.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TieBreakingBenchmark {
+    private static final int NUM_OF_ROWS = 1024;
+
+    @Param({ "2", "4", "16" })
+    public int num_of_actions;
+
+    @Param({ "distinct", "tied" })
+    public String scores;
+
+    private final Random random = new Random(0);
+
+    private float[] table;
+    private int[] index;
+    private int row;
+
+    @Setup
+    public void setup() {
+        table = new float[NUM_OF_ROWS * num_of_actions];
+        if ("distinct".equals(scores)) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = random.nextFloat();
+            }
+        }
+        index = new int[num_of_actions];
+        for (int i = 0; i < num_of_actions; i++) {
+            index[i] = i;
+        }
+    }
+
+    @Benchmark
+    public int shuffle() {
+        int offset = nextRow() * num_of_actions;
+        for (int i = index.length - 1; i > 0; i--) {
+            int k = random.nextInt(i + 1);
+            int tmp = index[k];
+            index[k] = index[i];
+            index[i] = tmp;
+        }
+
+        int action = -1;
+        float action_value = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < num_of_actions; i++) {
+            if (action_value < table[offset + index[i]]) {
+                action_value = table[offset + index[i]];
+                action = index[i];
+            }
+        }
+        return action;
+    }
+
+    @Benchmark
+    public int reservoir() {
+        return ActionSampler.randomGreedy(table, nextRow() * num_of_actions, num_of_actions, random);
+    }
+
+    private int nextRow() {
+        row = row + 1 == NUM_OF_ROWS ? 0 : row + 1;
+        return row;
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import main.env.Environment;
+import main.env.http.EnvironmentServer;
+import main.env.http.HttpEnvironment;
+import main.env.http.HttpVectorEnvironment;
+import main.env.http.WireProtocol;
+import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
+
+/**
+ * Steps per second of a remote environment with observations of the given
+ * dimension over the loopback interface, with json or binary responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireProtocolBenchmark {
+    private static final int NUM_OF_INSTANCES = 16;
+
+    @Param({ "4", "256", "4096" })
+    public int dim_of_state;
+
+    @Param({ "JSON", "BINARY" })
+    public WireProtocol protocol;
+
+    private EnvironmentServer server;
+    private HttpEnvironment env;
+    private HttpVectorEnvironment vector_env;
+    private StepResult result;
+    private int[] actions;
+
+    @Setup
+    public void setup() throws IOException {
+        server = EnvironmentServer.start(0, NUM_OF_INSTANCES, () -> new NoiseEnvironment(dim_of_state), 4);
+        env = HttpEnvironment.make(server.getAddress(), 0, protocol);
+        vector_env = HttpVectorEnvironment.make(server.getAddress(), protocol);
+        result = new StepResult(dim_of_state);
+        env.reset(result);
+        vector_env.reset();
+        actions = new int[NUM_OF_INSTANCES];
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public void step(Blackhole blackhole) {
+        env.step(0, result);
+        blackhole.consume(result);
+    }
+
+    @Benchmark
+    public void stepBatch(Blackhole blackhole) {
+        blackhole.consume(vector_env.step(actions));
+    }
+
+    /**
+     * Environment of uniform noise, whose simulation cost is negligible.
+     */
+    private static final class NoiseEnvironment extends Environment {
+        private final float[] state;
+
+        private NoiseEnvironment(int dim_of_state) {
+            super(null, dim_of_state, 2);
+            this.state = new float[dim_of_state];
+        }
+
+        @Override
+        public void render() {
+            // No effect
+        }
+
+        @Override
+        public Snapshot reset() {
+            return step(0);
+        }
+
+        @Override
+        public Snapshot step(int action) {
+            for (int i = 0; i < state.length; i++) {
+                state[i] = random.nextFloat();
+            }
+            return new Snapshot(state, random.nextFloat(), false);
+        }
+
+        @Override
+        public void step(int action, StepResult result) {
+            for (int i = 0; i < state.length; i++) {
+                state[i] = random.nextFloat();
+            }
+            result.set(state, random.nextFloat(), false);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package main.agent;
 
-import java.util.Random;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 import ai.djl.Model;
 import ai.djl.engine.Engine;
@@ -8,6 +11,7 @@ import ai.djl.inference.Predictor;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Parameter;
 import ai.djl.training.GradientCollector;
 import ai.djl.training.optimizer.Optimizer;
@@ -17,31 +21,62 @@ import ai.djl.translate.TranslateException;
 import ai.djl.util.Pair;
 import main.agent.base.BaseAgent;
 import main.agent.model.DistributionValueModel;
+import main.agent.model.MLPPolicy;
 import main.utils.ActionSampler;
+import main.utils.Checkpoint;
+import main.utils.Helper;
 import main.utils.Memory;
-import main.utils.datatype.Transition;
+import main.utils.StatefulRandom;
+import main.utils.metrics.Metrics;
 
 public class A2C extends BaseAgent {
 
-    private final Random random = new Random(0);
-    private final Memory memory = new Memory(1);
+    private final StatefulRandom random = new StatefulRandom(0);
+    private final Memory memory;
 
     private final int dim_of_state_space;
     private final int num_of_action;
     private final int hidden_size;
     private final float gamma;
+    private final int n_steps;
     private final Optimizer optimizer;
+    private final float[] state_buffer;
+    private final float[] states_buffer;
+    private final int[] actions_buffer;
+    private final float[] returns_buffer;
+    private final float[] discounts_buffer;
 
     private NDManager manager = NDManager.newBaseManager();
     private Model model;
     private Predictor<NDList, NDList> predictor;
 
     public A2C(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float learning_rate) {
+        this(dim_of_state_space, num_of_action, hidden_size, gamma, learning_rate, 1);
+    }
+
+    /**
+     * Create an agent updated on the n-step returns of every n_steps
+     * transitions, or of the transitions left at the end of an episode. The
+     * returns are bootstrapped with the value of the state following the last
+     * transition, which is evaluated in the same forward pass as the states of
+     * the transitions and also selects the next action.
+     * 
+     * @param n_steps number of transitions per update
+     */
+    public A2C(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float learning_rate,
+            int n_steps) {
         this.dim_of_state_space = dim_of_state_space;
         this.num_of_action = num_of_action;
         this.hidden_size = hidden_size;
         this.gamma = gamma;
+        this.n_steps = n_steps;
+        this.memory = new Memory(n_steps);
         this.optimizer = Optimizer.adam().optLearningRateTracker(Tracker.fixed(learning_rate)).build();
+        this.state_buffer = new float[dim_of_state_space];
+        this.states_buffer = new float[(n_steps + 1) * dim_of_state_space];
+        this.actions_buffer = new int[n_steps];
+        this.returns_buffer = new float[n_steps];
+        this.discounts_buffer = new float[n_steps];
 
         reset();
     }
@@ -49,15 +84,23 @@ public class A2C extends BaseAgent {
     @Override
     public int react(float[] state) {
         try (NDManager submanager = manager.newSubManager()) {
+            int size = 0;
             if (!isEval()) {
                 memory.setState(state);
-
-                if (memory.size() > 0) {
-                    updateModel(submanager);
-                }
+                size = memory.size();
             }
 
-            NDArray prob = predictor.predict(new NDList(submanager.create(state))).get(0);
+            NDArray prob;
+            if (size >= n_steps || size > 0 && memory.isMasked(size - 1)) {
+                long start = update_timer.start();
+                prob = updateModel(submanager, state, size);
+                update_timer.stop(start);
+                update_counter.increment();
+            } else {
+                long start = forward_timer.start();
+                prob = predictor.predict(new NDList(submanager.create(state))).get(0);
+                forward_timer.stop(start);
+            }
             int action = ActionSampler.sampleMultinomial(prob, random);
 
             if (!isEval()) {
@@ -89,33 +132,102 @@ public class A2C extends BaseAgent {
 
     }
 
-    private void updateModel(NDManager submanager) throws TranslateException {
-        Transition transition = memory.get(0);
-        NDList net_output = predictor.predict(new NDList(submanager.create(transition.getState())));
+    /**
+     * Copy the model into a policy evaluated without the engine.
+     * 
+     * @return policy
+     */
+    public final MLPPolicy exportPolicy() {
+        return DistributionValueModel.export(model);
+    }
 
-        NDArray distribution = net_output.get(0);
-        NDArray advantage = net_output.get(1).neg().add(transition.getReward());
+    @Override
+    protected void writeState(DataOutputStream output, boolean include_memory) throws IOException {
+        Checkpoint.writeParameters(output, model);
+        Checkpoint.writeFloats(output, DistributionValueModel.getStatistics(model));
+        Checkpoint.writeOptimizer(output, optimizer);
+        output.writeLong(random.getState());
+        memory.save(output);
+    }
+
+    @Override
+    protected void readState(DataInputStream input, boolean include_memory) throws IOException {
+        Checkpoint.readParameters(input, model);
+        DistributionValueModel.setStatistics(model, Checkpoint.readFloats(input));
+        Checkpoint.readOptimizer(input, optimizer, model);
+        random.setState(input.readLong());
+        memory.load(input);
+    }
 
-        if (!transition.isMasked()) {
-            NDArray value_next = predictor.predict(new NDList(submanager.create(transition.getNextState()))).get(1);
-            advantage = advantage.add(value_next.mul(gamma));
+    @Override
+    protected void registerMetrics(Metrics metrics) {
+        metrics.gauge("ndarray.count", () -> Metrics.countResources(manager));
+    }
+
+    /**
+     * Update the model on the stored transitions with a single forward pass on
+     * their states stacked with the current state, whose value bootstraps the
+     * returns unless the last transition is terminal.
+     * 
+     * @param submanager
+     * @param state      current state
+     * @param size       number of stored transitions
+     * @return distribution of the actions at the current state
+     */
+    private NDArray updateModel(NDManager submanager, float[] state, int size) {
+        float next_return = 0.0f;
+        float discount = memory.isMasked(size - 1) ? 0.0f : 1.0f;
+        for (int i = size - 1; i >= 0; i--) {
+            memory.getState(i, state_buffer);
+            System.arraycopy(state_buffer, 0, states_buffer, i * dim_of_state_space, dim_of_state_space);
+            actions_buffer[i] = memory.getAction(i);
+            next_return = memory.getReward(i) + gamma * next_return;
+            discount *= gamma;
+            returns_buffer[i] = next_return;
+            discounts_buffer[i] = discount;
         }
+        System.arraycopy(state, 0, states_buffer, size * dim_of_state_space, dim_of_state_space);
+        memory.clearTransitions();
+
+        NDArray states = submanager.create(sliceOf(states_buffer, (size + 1) * dim_of_state_space),
+                new Shape(size + 1, dim_of_state_space));
+        NDList net_output = DistributionValueModel.forwardTraining(model, new NDList(states));
+        NDArray distribution = net_output.get(0);
+        NDArray values = net_output.get(1).reshape(size + 1);
 
-        NDArray log_distribution = distribution.log();
+        NDArray advantage = submanager.create(sliceOf(discounts_buffer, size)).mul(values.get(size))
+                .add(submanager.create(sliceOf(returns_buffer, size))).sub(values.get("0:{}", size));
+        NDArray log_probabilities = Helper.gather(distribution.get("0:{}", size), sliceOf(actions_buffer, size))
+                .log();
 
-        NDArray loss_critic = advantage.square();
-        NDArray loss_actor = log_distribution.get(transition.getAction()).mul(advantage).neg();
+        NDArray loss_critic = advantage.square().sum();
+        NDArray loss_actor = log_probabilities.mul(advantage).sum().neg();
         NDArray loss = loss_actor.add(loss_critic);
 
+        recordLoss(loss);
         try (GradientCollector collector = Engine.getInstance().newGradientCollector()) {
+            long start = backward_timer.start();
             collector.backward(loss);
+            backward_timer.stop(start);
 
+            start = optimizer_timer.start();
             for (Pair<String, Parameter> params : model.getBlock().getParameters()) {
                 NDArray params_arr = params.getValue().getArray();
 
                 optimizer.update(params.getKey(), params_arr, params_arr.getGradient().duplicate());
             }
+            optimizer_timer.stop(start);
 
         }
+
+        return distribution.get(size);
+    }
+
+    private static float[] sliceOf(float[] arr, int size) {
+        return size == arr.length ? arr : Arrays.copyOf(arr, size);
+    }
+
+    private static int[] sliceOf(int[] arr, int size) {
+        return size == arr.length ? arr : Arrays.copyOf(arr, size);
     }
 }
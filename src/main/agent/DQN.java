@@ -6,8 +6,8 @@ import ai.djl.ndarray.NDManager;
 import ai.djl.training.loss.L2Loss;
 import ai.djl.translate.TranslateException;
 import main.agent.base.BaseDQN;
-import main.utils.ActionSampler;
 import main.utils.Helper;
+import main.utils.Memory;
 import main.utils.datatype.MemoryBatch;
 
 public class DQN extends BaseDQN {
@@ -18,10 +18,15 @@ public class DQN extends BaseDQN {
         super(dim_of_state_space, num_of_actions, hidden_size, batch_size, sync_net_interval, gamma, learning_rate);
     }
 
+    public DQN(int dim_of_state_space, int num_of_actions, int hidden_size, int batch_size, int sync_net_interval,
+            float gamma, float learning_rate, Memory memory) {
+        super(dim_of_state_space, num_of_actions, hidden_size, batch_size, sync_net_interval, gamma, learning_rate,
+                memory);
+    }
+
     @Override
-    protected int getAction(NDManager manager, float[] state) throws TranslateException {
-        NDArray score = target_predictor.predict(new NDList(manager.create(state))).singletonOrThrow();
-        return ActionSampler.epsilonGreedy(score, random, Math.max(MIN_EXPLORE_RATE, epsilon));
+    protected NDArray getScores(NDArray output) {
+        return output;
     }
 
     @Override
@@ -30,11 +35,19 @@ public class DQN extends BaseDQN {
 
         NDArray policy = policy_predictor.predict(new NDList(batch.getStates())).singletonOrThrow();
         NDArray target = target_predictor.predict(new NDList(batch.getNextStates())).singletonOrThrow().duplicate();
-        NDArray expected_returns = Helper.gather(policy, batch.getActions().toIntArray());
+        NDArray expected_returns = Helper.gather(policy, batch.getActions());
         NDArray next_returns = batch.getRewards()
                 .add(target.max(new int[] { 1 }).mul(batch.getMasks().logicalNot()).mul(gamma));
 
-        NDArray loss = loss_func.evaluate(new NDList(expected_returns), new NDList(next_returns));
+        NDArray weights = batch.getWeights();
+        NDArray loss;
+        if (weights == null) {
+            loss = loss_func.evaluate(new NDList(expected_returns), new NDList(next_returns));
+        } else {
+            NDArray td_errors = next_returns.sub(expected_returns);
+            loss = td_errors.square().mul(weights).mean().mul(0.5f);
+            memory.updatePriorities(batch.getIndexes(), td_errors.abs().toFloatArray());
+        }
 
         gradientUpdate(loss);
 
@@ -1,60 +1,151 @@
 package main.agent;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.Random;
-import java.util.stream.IntStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import main.agent.base.BaseAgent;
+import main.agent.encoder.GridEncoder;
+import main.utils.ActionSampler;
+import main.utils.Checkpoint;
+import main.utils.IndexedPriorityQueue;
 import main.utils.Memory;
-import main.utils.datatype.Transition;
-
+import main.utils.StatefulRandom;
+import main.utils.metrics.Counter;
+import main.utils.metrics.Metrics;
+
+/**
+ * Tabular Dyna-Q. The Q-table and the empirical model are flat row-major
+ * arrays indexed by state * number of actions + action, and resetting them
+ * only visits the states seen since the last reset. Planning either replays
+ * uniformly sampled visited state-action pairs, or sweeps them by priority,
+ * so that the updates focus on the predecessors of the states whose values
+ * changed. Uniform planning may also run on background threads, concurrently
+ * with acting.
+ */
 public class DynaQ extends BaseAgent {
-    private final Random random = new Random(0);
+    private static final VarHandle TABLE = MethodHandles.arrayElementVarHandle(float[].class);
+    private static final int PLANNING_CHUNK = 64;
+    private static final int DEFAULT_BACKLOG_STEPS = 16;
+
+    private final StatefulRandom random = new StatefulRandom(0);
     private final Memory memory = new Memory(1);
     private final EmpiricalModel env;
-    private final int[] index;
-    private final float[][] table;
+    private final IndexedPriorityQueue queue;
+    private final float[] table;
+    private final float[] state_buffer;
+    private final float[] state_next_buffer;
 
-    private final double[][] state_ranges;
+    private final GridEncoder encoder;
 
-    private final int state_resolution;
     private final int num_of_states;
     private final int num_of_actions;
     private final float alpha;
     private final float gamma;
     private final double epsilon;
     private final int num_of_planning_iterations;
+    private final float priority_threshold;
+    private final int max_backlog;
+
+    private final Thread[] planners;
+    private final Semaphore planning_budget = new Semaphore(0);
+    private final ReadWriteLock planning_lock = new ReentrantReadWriteLock();
+    private volatile boolean closed = false;
+    private Counter dropped_counter = Counter.DISABLED;
 
     public DynaQ(double[][] state_ranges, int num_of_actions, int state_resolution, float alpha, float gamma,
             float epsilon, int num_of_planning_iterations) {
-        int num_of_states = 1;
+        this(state_ranges, num_of_actions, state_resolution, alpha, gamma, epsilon, num_of_planning_iterations,
+                false, 0.0f, 0, 0);
+    }
 
-        this.state_ranges = new double[state_ranges.length][];
-        for (int i = 0; i < state_ranges.length; i++) {
-            double[] range = state_ranges[i];
-            this.state_ranges[i] = state_ranges[i].clone();
+    /**
+     * Create an agent planning uniformly on background threads. Every step
+     * grants num_of_planning_iterations updates to the planners, which run
+     * them concurrently with acting and with each other, updating the table
+     * with compare-and-set. Acting thus only waits for its own update, but the
+     * planning updates are no longer reproducible. Planners are stopped by
+     * {@link #close()}. At most the updates of the last 16 steps are pending.
+     * 
+     * @param num_of_planners number of background threads
+     */
+    public DynaQ(double[][] state_ranges, int num_of_actions, int state_resolution, float alpha, float gamma,
+            float epsilon, int num_of_planning_iterations, int num_of_planners) {
+        this(state_ranges, num_of_actions, state_resolution, alpha, gamma, epsilon, num_of_planning_iterations,
+                num_of_planners, DEFAULT_BACKLOG_STEPS * num_of_planning_iterations);
+    }
 
-            if (range == null || range.length != 2) {
-                throw new IllegalArgumentException("Invalid state range");
-            }
+    /**
+     * Create an agent planning uniformly on background threads, with at most
+     * max_backlog updates pending. When the planners fall behind acting, a
+     * step only grants the updates fitting under the cap, and the rest of its
+     * budget is dropped, not deferred, so that planning never lags acting by
+     * more than max_backlog updates. The dropped updates are counted by the
+     * planning.dropped metric.
+     * 
+     * @param num_of_planners number of background threads
+     * @param max_backlog     maximal number of updates granted but not yet run
+     */
+    public DynaQ(double[][] state_ranges, int num_of_actions, int state_resolution, float alpha, float gamma,
+            float epsilon, int num_of_planning_iterations, int num_of_planners, int max_backlog) {
+        this(state_ranges, num_of_actions, state_resolution, alpha, gamma, epsilon, num_of_planning_iterations,
+                false, 0.0f, num_of_planners, max_backlog);
+    }
 
-            num_of_states *= state_resolution;
-        }
+    /**
+     * Create an agent planning by prioritized sweeping. Every update of a
+     * state queues its predecessors in the empirical model whose temporal
+     * difference error exceeds the threshold, and each planning iteration
+     * updates the pair of largest error, until the queue is empty.
+     * 
+     * @param priority_threshold minimal absolute temporal difference error of a
+     *                           queued pair
+     */
+    public DynaQ(double[][] state_ranges, int num_of_actions, int state_resolution, float alpha, float gamma,
+            float epsilon, int num_of_planning_iterations, float priority_threshold) {
+        this(state_ranges, num_of_actions, state_resolution, alpha, gamma, epsilon, num_of_planning_iterations, true,
+                priority_threshold, 0, 0);
+    }
 
-        this.num_of_states = num_of_states;
+    private DynaQ(double[][] state_ranges, int num_of_actions, int state_resolution, float alpha, float gamma,
+            float epsilon, int num_of_planning_iterations, boolean prioritized, float priority_threshold,
+            int num_of_planners, int max_backlog) {
+        if (num_of_planners > 0 && max_backlog < num_of_planning_iterations) {
+            throw new IllegalArgumentException("max_backlog must not be smaller than num_of_planning_iterations");
+        }
+        this.encoder = new GridEncoder(state_ranges, state_resolution);
+        this.num_of_states = encoder.getNumOfFeatures();
 
-        this.env = new EmpiricalModel(num_of_states, num_of_actions, random);
+        this.env = new EmpiricalModel(num_of_states, num_of_actions, prioritized);
+        this.queue = prioritized ? new IndexedPriorityQueue(num_of_states * num_of_actions) : null;
 
-        this.index = IntStream.range(0, num_of_actions).toArray();
-        this.state_resolution = state_resolution;
         this.num_of_actions = num_of_actions;
         this.gamma = gamma;
         this.alpha = alpha;
         this.epsilon = epsilon;
         this.num_of_planning_iterations = num_of_planning_iterations;
-
-        table = new float[num_of_states][num_of_actions];
-
+        this.priority_threshold = priority_threshold;
+        this.max_backlog = max_backlog;
+
+        table = new float[num_of_states * num_of_actions];
+        state_buffer = new float[state_ranges.length];
+        state_next_buffer = new float[state_ranges.length];
+
+        this.planners = new Thread[num_of_planners];
+        for (int i = 0; i < num_of_planners; i++) {
+            Planner planner = new Planner(i + 1);
+            planners[i] = new Thread(planner, "dynaq-planner-" + i);
+            planners[i].setDaemon(true);
+            planners[i].start();
+        }
     }
 
     @Override
@@ -62,29 +153,53 @@ public class DynaQ extends BaseAgent {
         if (!isEval()) {
             memory.setState(state);
             if (memory.size() > 0) {
-                Transition transition = memory.get(0);
-                int state_value = encodeState(transition.getState());
-                int state_next = encodeState(transition.getNextState());
-                env.update(state_value, state_next, transition.getAction(), transition.getReward(),
-                        transition.isMasked());
-                updateTable(state_value, state_next, transition.getAction(), transition.getReward(),
-                        transition.isMasked());
+                memory.getState(0, state_buffer);
+                int state_value = encodeState(state_buffer);
+                int state_next = encodeState(memory.getNextState(0, state_next_buffer) ? state_next_buffer : null);
+                env.update(state_value, state_next, memory.getAction(0), memory.getReward(0), memory.isMasked(0));
+                updateTable(state_value, state_next, memory.getAction(0), memory.getReward(0), memory.isMasked(0),
+                        random);
+                if (queue != null) {
+                    queuePredecessors(state_value);
+                }
             }
         }
 
         int action = (random.nextDouble() < epsilon || memory.size() == 0 ? random.nextInt(num_of_actions)
-                : getRandomMaxPolicy(encodeState(state)));
+                : getRandomMaxPolicy(encodeState(state), random));
 
         if (!isEval()) {
             memory.setAction(action);
             if (memory.size() > 0) {
-                planning();
+                long start = update_timer.start();
+                if (planners.length > 0) {
+                    grantPlanning();
+                } else {
+                    planning();
+                }
+                update_timer.stop(start);
+                update_counter.increment();
             }
         }
 
         return action;
     }
 
+    /**
+     * Grant the planning updates of a step to the planners, dropping those
+     * beyond max_backlog. Only the acting thread releases permits, so the
+     * backlog can only shrink between the check and the release.
+     */
+    private void grantPlanning() {
+        int granted = Math.min(num_of_planning_iterations, max_backlog - planning_budget.availablePermits());
+        if (granted > 0) {
+            planning_budget.release(granted);
+        }
+        if (granted < num_of_planning_iterations) {
+            dropped_counter.add(num_of_planning_iterations - Math.max(granted, 0));
+        }
+    }
+
     @Override
     public void collect(float reward, boolean done) {
         if (!isEval()) {
@@ -92,167 +207,470 @@ public class DynaQ extends BaseAgent {
         }
     }
 
+    /**
+     * Clear the rows of the table of the visited states, which are the only
+     * ones updated, then the empirical model, once the planners are idle.
+     */
     @Override
     public void reset() {
-        for (int i = 0; i < num_of_states; i++) {
-            Arrays.fill(table[i], 0);
+        planning_lock.writeLock().lock();
+        try {
+            planning_budget.drainPermits();
+            for (int i = 0; i < env.getNumOfVisitedStates(); i++) {
+                int offset = env.getVisitedState(i) * num_of_actions;
+                Arrays.fill(table, offset, offset + num_of_actions, 0.0f);
+            }
+            env.reset();
+            if (queue != null) {
+                queue.clear();
+            }
+            memory.reset();
+        } finally {
+            planning_lock.writeLock().unlock();
         }
-        env.reset();
-        memory.reset();
     }
 
-    private void planning() {
-        for (int i = 0; i < num_of_planning_iterations; i++) {
-            int[] sample = env.sample();
-            int state = sample[0];
-            int action = sample[1];
-            int state_next = env.getNextState(state, action);
-            float reward = env.getReward(state, action);
-            updateTable(state, state_next, action, reward, state_next == num_of_states);
+    /**
+     * Stop the background planners, discarding the updates not yet run.
+     */
+    public void close() {
+        closed = true;
+        for (Thread planner : planners) {
+            planner.interrupt();
         }
+        for (Thread planner : planners) {
+            try {
+                planner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
+    /**
+     * Write the table, the empirical model, the priority queue, the random
+     * generator, and the pending transition, while the planners are idle. The
+     * updates granted to the planners but not yet run are not saved.
+     */
+    @Override
+    protected void writeState(DataOutputStream output, boolean include_memory) throws IOException {
+        planning_lock.writeLock().lock();
+        try {
+            writeTable(output);
+        } finally {
+            planning_lock.writeLock().unlock();
+        }
     }
 
-    private void updateTable(int state, int state_next, int action, float reward, boolean last_episode) {
-        float expected_return = last_episode ? 0.0f : gamma * table[state_next][getRandomMaxPolicy(state_next)];
+    @Override
+    protected void readState(DataInputStream input, boolean include_memory) throws IOException {
+        planning_lock.writeLock().lock();
+        try {
+            planning_budget.drainPermits();
+            readTable(input);
+        } finally {
+            planning_lock.writeLock().unlock();
+        }
+    }
 
-        table[state][action] += alpha * (reward + expected_return - table[state][action]);
+    @Override
+    protected void registerMetrics(Metrics metrics) {
+        if (planners.length > 0) {
+            metrics.gauge("planning.backlog", planning_budget::availablePermits);
+            dropped_counter = metrics.counter("planning.dropped");
+        }
     }
 
-    private int encodeState(float[] state) {
-        if (state == null) {
-            return num_of_states;
-        } else {
-            int state_value = 0;
-            for (int i = 0; i < state.length; i++) {
-                state_value *= state_resolution;
-                double score;
-                if (state_ranges[i][0] == Double.NEGATIVE_INFINITY || state_ranges[i][1] == Double.POSITIVE_INFINITY) {
-                    score = (state[i] - Math.atan(state_ranges[i][0]))
-                            / (Math.atan(state_ranges[i][1]) - Math.atan(state_ranges[i][0]));
-                } else {
-                    score = (state[i] - state_ranges[i][0]) / (state_ranges[i][1] - state_ranges[i][0]);
-                }
-                int value = (int) (state_resolution * score);
-                if (value >= state_resolution) {
-                    value = state_resolution - 1;
-                }
-                if (value < 0) {
-                    value = 0;
-                }
-                state_value += value;
-            }
+    private void writeTable(DataOutputStream output) throws IOException {
+        output.writeInt(num_of_states);
+        Checkpoint.writeFloats(output, table);
+        env.save(output);
+        if (queue != null) {
+            queue.save(output);
+        }
+        output.writeLong(random.getState());
+        memory.save(output);
+    }
 
-            return state_value;
+    private void readTable(DataInputStream input) throws IOException {
+        if (input.readInt() != num_of_states) {
+            throw new IOException("Expected a table of " + num_of_states + " states");
         }
+        System.arraycopy(Checkpoint.readFloats(input), 0, table, 0, table.length);
+        env.load(input);
+        if (queue != null) {
+            queue.load(input);
+        }
+        random.setState(input.readLong());
+        memory.load(input);
+    }
+
+    private void planning() {
+        if (queue != null) {
+            sweep();
+            return;
+        }
+
+        plan(num_of_planning_iterations, random);
     }
 
-    private int getRandomMaxPolicy(int state) {
-        int action = -1;
-        double action_value = Double.NEGATIVE_INFINITY;
-        shuffleIndex();
+    private void plan(int num_of_iterations, Random random) {
+        for (int i = 0; i < num_of_iterations; i++) {
+            int pair = env.sample(random);
+            int state_next = env.getNextState(pair);
+            updateTable(pair / num_of_actions, state_next, pair % num_of_actions, env.getReward(pair),
+                    state_next == num_of_states, random);
+        }
+    }
 
-        for (int i = 0; i < num_of_actions; i++) {
-            int proposal = index[i];
-            if (action_value < table[state][proposal]) {
-                action_value = table[state][proposal];
-                action = proposal;
+    private void sweep() {
+        for (int i = 0; i < num_of_planning_iterations && !queue.isEmpty(); i++) {
+            int pair = queue.poll();
+            int state = pair / num_of_actions;
+            int state_next = env.getNextState(pair);
+            updateTable(state, state_next, pair % num_of_actions, env.getReward(pair), state_next == num_of_states,
+                    random);
+            queuePredecessors(state);
+        }
+    }
+
+    /**
+     * Queue the pairs leading to the state whose temporal difference error
+     * exceeds the threshold.
+     * 
+     * @param state
+     */
+    private void queuePredecessors(int state) {
+        float value = gamma * getMaxValue(state);
+        for (int pair = env.getFirstPredecessor(state); pair >= 0; pair = env.getNextPredecessor(pair)) {
+            float priority = Math.abs(env.getReward(pair) + value - table[pair]);
+            if (priority > priority_threshold) {
+                queue.offer(pair, priority);
             }
         }
-        if (action < 0) {
-            throw new IllegalArgumentException("Invalid action");
+    }
+
+    /**
+     * Move the value of the pair towards its one-step target. With background
+     * planners, the entry is updated by compare-and-set, retried if another
+     * thread updated it in the meantime.
+     */
+    private void updateTable(int state, int state_next, int action, float reward, boolean last_episode,
+            Random random) {
+        float expected_return = last_episode ? 0.0f
+                : gamma * table[state_next * num_of_actions + getRandomMaxPolicy(state_next, random)];
+        int pair = state * num_of_actions + action;
+
+        if (planners.length == 0) {
+            table[pair] += alpha * (reward + expected_return - table[pair]);
+            return;
         }
 
-        return action;
+        float value;
+        do {
+            value = (float) TABLE.getVolatile(table, pair);
+        } while (!TABLE.compareAndSet(table, pair, value, value + alpha * (reward + expected_return - value)));
     }
 
-    private void shuffleIndex() {
-        for (int i = index.length - 1; i > 0; i--) {
-            int k = random.nextInt(i + 1);
-            int tmp = index[k];
-            index[k] = index[i];
-            index[i] = tmp;
+    private float getMaxValue(int state) {
+        int offset = state * num_of_actions;
+        float value = table[offset];
+        for (int i = 1; i < num_of_actions; i++) {
+            value = Math.max(value, table[offset + i]);
         }
+        return value;
+    }
 
+    /**
+     * Return the cell of the state in the grid, or num_of_states for the
+     * terminal state.
+     * 
+     * @param state null if terminal
+     * @return index of the state
+     */
+    private int encodeState(float[] state) {
+        return state == null ? num_of_states : encoder.encode(state);
+    }
+
+    private int getRandomMaxPolicy(int state, Random random) {
+        return ActionSampler.randomGreedy(table, state * num_of_actions, num_of_actions, random);
+    }
+
+    /**
+     * Background thread running the planning updates granted by the acting
+     * thread, in chunks during which the table cannot be reset or saved.
+     */
+    private final class Planner implements Runnable {
+        private final Random random;
+
+        private Planner(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    if (!planning_budget.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                int num_of_iterations = 1;
+                int extra = Math.min(PLANNING_CHUNK - 1, planning_budget.availablePermits());
+                if (extra > 0 && planning_budget.tryAcquire(extra)) {
+                    num_of_iterations += extra;
+                }
+
+                planning_lock.readLock().lock();
+                try {
+                    if (env.getNumOfVisitedStates() > 0) {
+                        plan(num_of_iterations, random);
+                    }
+                } finally {
+                    planning_lock.readLock().unlock();
+                }
+            }
+        }
     }
 }
 
+/**
+ * Deterministic model of the environment, which keeps the latest next state
+ * and reward of every visited state-action pair in flat arrays indexed by
+ * state * number of actions + action. The pairs leading to each state may also
+ * be tracked in intrusive doubly linked lists, for prioritized sweeping.
+ * <p>
+ * A single thread updates the model, while others may sample it: the next
+ * state and the reward of a pair are packed into one long written atomically,
+ * and the visited states and actions are published by release writes of their
+ * counts, after their entries.
+ */
 class EmpiricalModel {
-    private final Random random;
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle OUTCOMES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long UNVISITED = -1L;
+
     private final int num_of_states;
+    private final int num_of_actions;
 
-    private final boolean[] visited_state_mark;
     private final int[] visited_states;
-    private final boolean[][] visited_state_action_mark;
-    private final int[][] visited_state_actions;
+    private final int[] num_of_visited_actions;
+    private final int[] visited_actions;
 
-    private final int[][] transitions;
-    private final float[][] rewards;
+    private final long[] outcomes;
 
-    private final int[] num_of_visited_state_action;
-    private int num_of_visited_states = 0;
+    private final int[] first_predecessors;
+    private final int[] next_predecessors;
+    private final int[] previous_predecessors;
 
-    public EmpiricalModel(int num_of_states, int num_of_actions, Random random) {
-        this.num_of_states = num_of_states;
-        this.random = random;
+    private volatile int num_of_visited_states = 0;
 
-        this.transitions = new int[num_of_states][num_of_actions];
-        this.rewards = new float[num_of_states][num_of_actions];
+    public EmpiricalModel(int num_of_states, int num_of_actions, boolean track_predecessors) {
+        this.num_of_states = num_of_states;
+        this.num_of_actions = num_of_actions;
 
-        this.visited_state_mark = new boolean[num_of_states];
         this.visited_states = new int[num_of_states];
-        this.visited_state_action_mark = new boolean[num_of_states][num_of_actions];
-        this.visited_state_actions = new int[num_of_states][num_of_actions];
+        this.num_of_visited_actions = new int[num_of_states];
+        this.visited_actions = new int[num_of_states * num_of_actions];
 
-        this.num_of_visited_state_action = new int[num_of_states];
+        this.outcomes = new long[num_of_states * num_of_actions];
+        Arrays.fill(outcomes, UNVISITED);
 
-        reset();
+        if (track_predecessors) {
+            this.first_predecessors = new int[num_of_states];
+            this.next_predecessors = new int[num_of_states * num_of_actions];
+            this.previous_predecessors = new int[num_of_states * num_of_actions];
+            Arrays.fill(first_predecessors, -1);
+        } else {
+            this.first_predecessors = null;
+            this.next_predecessors = null;
+            this.previous_predecessors = null;
+        }
     }
 
     public void update(int state, int state_next, int action, float reward, boolean last_episode) {
-        if (!visited_state_mark[state]) {
-            visited_state_mark[state] = true;
-            visited_states[num_of_visited_states] = state;
-            num_of_visited_states++;
+        int pair = state * num_of_actions + action;
+        long previous_outcome = (long) OUTCOMES.getAcquire(outcomes, pair);
+        int previous = previous_outcome == UNVISITED ? -1 : nextStateOf(previous_outcome);
+        int target = last_episode ? num_of_states : state_next;
+
+        OUTCOMES.setRelease(outcomes, pair, ((long) target << 32) | (Float.floatToRawIntBits(reward) & 0xFFFFFFFFL));
+        if (previous < 0) {
+            int count = num_of_visited_actions[state];
+            visited_actions[state * num_of_actions + count] = action;
+            COUNTS.setRelease(num_of_visited_actions, state, count + 1);
+            if (count == 0) {
+                int num_of_visited_states = this.num_of_visited_states;
+                visited_states[num_of_visited_states] = state;
+                this.num_of_visited_states = num_of_visited_states + 1;
+            }
         }
-
-        if (!visited_state_action_mark[state][action]) {
-            visited_state_action_mark[state][action] = true;
-            visited_state_actions[state][num_of_visited_state_action[state]] = action;
-            num_of_visited_state_action[state]++;
+        if (first_predecessors != null && previous != target) {
+            if (previous >= 0 && previous < num_of_states) {
+                unlink(pair, previous);
+            }
+            if (target < num_of_states) {
+                link(pair, target);
+            }
         }
-        transitions[state][action] = last_episode ? num_of_states : state_next;
-        rewards[state][action] = reward;
     }
 
-    public int getNextState(int state, int action) {
-        return transitions[state][action];
+    public int getNextState(int pair) {
+        return nextStateOf((long) OUTCOMES.getAcquire(outcomes, pair));
+    }
+
+    public float getReward(int pair) {
+        return Float.intBitsToFloat((int) (long) OUTCOMES.getAcquire(outcomes, pair));
+    }
+
+    public int getNumOfVisitedStates() {
+        return num_of_visited_states;
     }
 
-    public float getReward(int state, int action) {
-        return rewards[state][action];
+    public int getVisitedState(int i) {
+        return visited_states[i];
     }
 
-    public int[] sample() {
+    /**
+     * Sample a visited state uniformly, then one of its visited actions.
+     * 
+     * @param random
+     * @return index of the pair
+     */
+    public int sample(Random random) {
         int state = visited_states[random.nextInt(num_of_visited_states)];
-        int action = visited_state_actions[state][random.nextInt(num_of_visited_state_action[state])];
+        int count = (int) COUNTS.getAcquire(num_of_visited_actions, state);
+        int action = visited_actions[state * num_of_actions + random.nextInt(count)];
+
+        return state * num_of_actions + action;
+    }
+
+    /**
+     * Return the first pair leading to the state, if the predecessors are
+     * tracked.
+     * 
+     * @param state
+     * @return index of the pair, or -1 if none
+     */
+    public int getFirstPredecessor(int state) {
+        return first_predecessors[state];
+    }
+
+    public int getNextPredecessor(int pair) {
+        return next_predecessors[pair];
+    }
+
+    /**
+     * Write the visited pairs state by state, and the lists of predecessors if
+     * tracked.
+     * 
+     * @param output
+     * @throws IOException
+     */
+    public void save(DataOutputStream output) throws IOException {
+        output.writeInt(num_of_visited_states);
+        for (int i = 0; i < num_of_visited_states; i++) {
+            int state = visited_states[i];
+            int offset = state * num_of_actions;
+            int[] actions = Arrays.copyOfRange(visited_actions, offset, offset + num_of_visited_actions[state]);
+            int[] next_states = new int[actions.length];
+            float[] action_rewards = new float[actions.length];
+            for (int j = 0; j < actions.length; j++) {
+                next_states[j] = getNextState(offset + actions[j]);
+                action_rewards[j] = getReward(offset + actions[j]);
+            }
+
+            output.writeInt(state);
+            Checkpoint.writeInts(output, actions);
+            Checkpoint.writeInts(output, next_states);
+            Checkpoint.writeFloats(output, action_rewards);
+        }
+
+        if (first_predecessors != null) {
+            Checkpoint.writeInts(output, first_predecessors);
+            Checkpoint.writeInts(output, next_predecessors);
+            Checkpoint.writeInts(output, previous_predecessors);
+        }
+    }
+
+    public void load(DataInputStream input) throws IOException {
+        reset();
+        int num_of_visited_states = input.readInt();
+        for (int i = 0; i < num_of_visited_states; i++) {
+            int state = input.readInt();
+            int offset = state * num_of_actions;
+            int[] actions = Checkpoint.readInts(input);
+            int[] next_states = Checkpoint.readInts(input);
+            float[] action_rewards = Checkpoint.readFloats(input);
+
+            visited_states[i] = state;
+            num_of_visited_actions[state] = actions.length;
+            System.arraycopy(actions, 0, visited_actions, offset, actions.length);
+            for (int j = 0; j < actions.length; j++) {
+                outcomes[offset + actions[j]] = ((long) next_states[j] << 32)
+                        | (Float.floatToRawIntBits(action_rewards[j]) & 0xFFFFFFFFL);
+            }
+        }
+        this.num_of_visited_states = num_of_visited_states;
 
-        return new int[] { state, action };
+        if (first_predecessors != null) {
+            System.arraycopy(Checkpoint.readInts(input), 0, first_predecessors, 0, first_predecessors.length);
+            System.arraycopy(Checkpoint.readInts(input), 0, next_predecessors, 0, next_predecessors.length);
+            System.arraycopy(Checkpoint.readInts(input), 0, previous_predecessors, 0, previous_predecessors.length);
+        }
     }
 
+    /**
+     * Forget the visited pairs, in time proportional to their number, while no
+     * other thread samples the model.
+     */
     public void reset() {
-        Arrays.fill(visited_states, -1);
-        Arrays.fill(visited_state_mark, false);
-        Arrays.fill(num_of_visited_state_action, 0);
+        for (int i = 0; i < num_of_visited_states; i++) {
+            int state = visited_states[i];
+            int offset = state * num_of_actions;
+            for (int j = 0; j < num_of_visited_actions[state]; j++) {
+                int pair = offset + visited_actions[offset + j];
+                int state_next = nextStateOf(outcomes[pair]);
+                if (first_predecessors != null && state_next < num_of_states) {
+                    first_predecessors[state_next] = -1;
+                }
+                outcomes[pair] = UNVISITED;
+            }
+            num_of_visited_actions[state] = 0;
+        }
         num_of_visited_states = 0;
 
-        for (int i = 0; i < num_of_states; i++) {
-            Arrays.fill(visited_state_action_mark[i], false);
-            Arrays.fill(visited_state_actions[i], -1);
-            Arrays.fill(transitions[i], 0);
-            Arrays.fill(rewards[i], 0.0f);
+    }
+
+    private static int nextStateOf(long outcome) {
+        return (int) (outcome >> 32);
+    }
+
+    private void link(int pair, int state) {
+        int first = first_predecessors[state];
+        next_predecessors[pair] = first;
+        previous_predecessors[pair] = -1;
+        if (first >= 0) {
+            previous_predecessors[first] = pair;
         }
+        first_predecessors[state] = pair;
+    }
 
+    private void unlink(int pair, int state) {
+        int next = next_predecessors[pair];
+        int previous = previous_predecessors[pair];
+        if (previous >= 0) {
+            next_predecessors[previous] = next;
+        } else {
+            first_predecessors[state] = next;
+        }
+        if (next >= 0) {
+            previous_predecessors[next] = previous;
+        }
     }
 
 }
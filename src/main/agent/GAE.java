@@ -9,40 +9,49 @@ import ai.djl.training.GradientCollector;
 import ai.djl.translate.TranslateException;
 import ai.djl.util.Pair;
 import main.agent.base.BaseGAE;
+import main.agent.model.DistributionValueModel;
 import main.utils.Helper;
 import main.utils.datatype.MemoryBatch;
 
 public class GAE extends BaseGAE {
     public GAE(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
             float learning_rate) {
-        super(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate);
+        this(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, 0);
+    }
+
+    public GAE(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
+            float learning_rate, int horizon) {
+        super(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, horizon);
 
         reset();
     }
 
-    protected void updateModel(NDManager submanager) throws TranslateException {
-        MemoryBatch batch = memory.getOrderedBatch(submanager);
-
-        NDList net_output = predictor.predict(new NDList(batch.getStates()));
+    @Override
+    protected void updateModel(NDManager submanager, MemoryBatch batch) throws TranslateException {
+        NDList net_output = DistributionValueModel.forwardTraining(model, new NDList(batch.getStates()));
         NDArray distribution = net_output.get(0);
         NDArray values = net_output.get(1);
-        NDList estimates = estimateAdvantage(values.duplicate(), batch.getRewards());
+        NDList estimates = estimateAdvantage(values, batch, 0.0f);
         NDArray expected_returns = estimates.get(0);
         NDArray advantages = estimates.get(1);
 
-        NDArray loss_critic = (expected_returns.sub(values)).square().sum();
-        NDArray loss_actor = Helper.gather(distribution.log(), batch.getActions().toIntArray()).mul(advantages).sum()
-                .neg();
+        NDArray loss_critic = (expected_returns.sub(values.reshape(expected_returns.getShape()))).square().sum();
+        NDArray loss_actor = Helper.gather(distribution, batch.getActions()).log().mul(advantages).sum().neg();
         NDArray loss = loss_actor.add(loss_critic);
 
+        recordLoss(loss);
         try (GradientCollector collector = Engine.getInstance().newGradientCollector()) {
+            long start = backward_timer.start();
             collector.backward(loss);
+            backward_timer.stop(start);
 
+            start = optimizer_timer.start();
             for (Pair<String, Parameter> params : model.getBlock().getParameters()) {
                 NDArray params_arr = params.getValue().getArray();
 
                 optimizer.update(params.getKey(), params_arr, params_arr.getGradient().duplicate());
             }
+            optimizer_timer.stop(start);
 
         }
     }
@@ -0,0 +1,155 @@
+package main.agent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.agent.base.BaseAgent;
+import main.agent.encoder.StateEncoder;
+import main.agent.encoder.TileCoder;
+import main.utils.ActionSampler;
+import main.utils.Checkpoint;
+import main.utils.Memory;
+import main.utils.StatefulRandom;
+
+/**
+ * Q-learning with values linear in the sparse features of a
+ * {@link StateEncoder}, e.g. a {@link TileCoder}. The value of an action is the
+ * sum of the weights of the active features for this action, and an update
+ * moves each of them by alpha / number of active features of the temporal
+ * difference error, so that a state generalizes to the states sharing its
+ * features. The weights take a fixed table of number of features * number of
+ * actions entries.
+ */
+public class LinearQ extends BaseAgent {
+    private final StatefulRandom random = new StatefulRandom(0);
+    private final Memory memory = new Memory(1);
+    private final StateEncoder encoder;
+    private final float[] weights;
+    private final float[] values;
+    private final int[] features;
+    private final int[] features_next;
+    private final float[] state_buffer;
+    private final float[] state_next_buffer;
+
+    private final int num_of_actions;
+    private final float alpha;
+    private final float gamma;
+    private final double epsilon;
+
+    public LinearQ(StateEncoder encoder, int num_of_actions, float alpha, float gamma, float epsilon) {
+        this.encoder = encoder;
+        this.num_of_actions = num_of_actions;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.epsilon = epsilon;
+
+        this.weights = new float[Math.multiplyExact(encoder.getNumOfFeatures(), num_of_actions)];
+        this.values = new float[num_of_actions];
+        this.features = new int[encoder.getNumOfActiveFeatures()];
+        this.features_next = new int[encoder.getNumOfActiveFeatures()];
+        this.state_buffer = new float[encoder.getDimOfState()];
+        this.state_next_buffer = new float[encoder.getDimOfState()];
+    }
+
+    @Override
+    public int react(float[] state) {
+        if (!isEval()) {
+            memory.setState(state);
+            if (memory.size() > 0) {
+                long start = update_timer.start();
+                updateWeights();
+                update_timer.stop(start);
+                update_counter.increment();
+            }
+        }
+
+        int action;
+        if (random.nextDouble() < epsilon) {
+            action = random.nextInt(num_of_actions);
+        } else {
+            encoder.encode(state, features);
+            action = ActionSampler.randomGreedy(computeValues(features), 0, num_of_actions, random);
+        }
+
+        if (!isEval()) {
+            memory.setAction(action);
+        }
+
+        return action;
+    }
+
+    @Override
+    public void collect(float reward, boolean done) {
+        if (!isEval()) {
+            memory.setRewardAndMask(reward, done);
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(weights, 0.0f);
+        memory.reset();
+    }
+
+    /**
+     * Write the weights, the random generator, and the pending transition.
+     */
+    @Override
+    protected void writeState(DataOutputStream output, boolean include_memory) throws IOException {
+        Checkpoint.writeFloats(output, weights);
+        output.writeLong(random.getState());
+        memory.save(output);
+    }
+
+    @Override
+    protected void readState(DataInputStream input, boolean include_memory) throws IOException {
+        float[] saved_weights = Checkpoint.readFloats(input);
+        if (saved_weights.length != weights.length) {
+            throw new IOException("Expected " + weights.length + " weights");
+        }
+        System.arraycopy(saved_weights, 0, weights, 0, weights.length);
+        random.setState(input.readLong());
+        memory.load(input);
+    }
+
+    /**
+     * Update the weights on the stored transition, which is then dropped, so
+     * that a terminal transition is learned once.
+     */
+    private void updateWeights() {
+        memory.getState(0, state_buffer);
+        encoder.encode(state_buffer, features);
+        int action = memory.getAction(0);
+
+        float target = memory.getReward(0);
+        if (memory.getNextState(0, state_next_buffer)) {
+            encoder.encode(state_next_buffer, features_next);
+            computeValues(features_next);
+            target += gamma * values[ActionSampler.greedy(values)];
+        }
+
+        float value = 0.0f;
+        for (int feature : features) {
+            value += weights[feature * num_of_actions + action];
+        }
+        float step = alpha / features.length * (target - value);
+        for (int feature : features) {
+            weights[feature * num_of_actions + action] += step;
+        }
+
+        memory.clearTransitions();
+    }
+
+    private float[] computeValues(int[] active_features) {
+        Arrays.fill(values, 0.0f);
+        for (int feature : active_features) {
+            int offset = feature * num_of_actions;
+            for (int i = 0; i < num_of_actions; i++) {
+                values[i] += weights[offset + i];
+            }
+        }
+        return values;
+    }
+}
@@ -1,16 +1,18 @@
 package main.agent;
 
+import java.util.Arrays;
+
 import ai.djl.engine.Engine;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
-import ai.djl.ndarray.index.NDIndex;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Parameter;
 import ai.djl.training.GradientCollector;
 import ai.djl.translate.TranslateException;
 import ai.djl.util.Pair;
 import main.agent.base.BaseGAE;
+import main.agent.model.DistributionValueModel;
 import main.utils.Helper;
 import main.utils.datatype.MemoryBatch;
 
@@ -19,76 +21,184 @@ public class PPO extends BaseGAE {
     private final int inner_batch_size;
     private final float ratio_lower_bound;
     private final float ratio_upper_bound;
+    private final boolean sample_without_replacement;
+    private final int dim_of_state_space;
+
+    private final float[] states_subset;
+    private final int[] actions_subset;
+    private final float[] distribution_subset;
+    private final float[] expected_returns_subset;
+    private final float[] advantages_subset;
+
+    private int[] permutation = new int[0];
 
     public PPO(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
             float learning_rate, int inner_updates, int inner_batch_size, float ratio_clip) {
-        super(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate);
+        this(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, inner_updates,
+                inner_batch_size, ratio_clip, false);
+    }
+
+    /**
+     * Create an agent with the given minibatch sampling.
+     * 
+     * @param sample_without_replacement if true, each of the inner_updates epochs
+     *                                   visits every transition once in
+     *                                   shuffled minibatches; otherwise, the
+     *                                   minibatches are sampled with
+     *                                   replacement
+     */
+    public PPO(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
+            float learning_rate, int inner_updates, int inner_batch_size, float ratio_clip,
+            boolean sample_without_replacement) {
+        this(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, inner_updates,
+                inner_batch_size, ratio_clip, sample_without_replacement, 0);
+    }
+
+    /**
+     * Create an agent updated on fixed-length rollouts.
+     * 
+     * @param horizon see {@link BaseGAE#BaseGAE(int, int, int, float, float, float, int)}
+     */
+    public PPO(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
+            float learning_rate, int inner_updates, int inner_batch_size, float ratio_clip,
+            boolean sample_without_replacement, int horizon) {
+        super(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, horizon);
         this.inner_updates = inner_updates;
         this.inner_batch_size = inner_batch_size;
         this.ratio_lower_bound = 1.0f - ratio_clip;
         this.ratio_upper_bound = 1.0f + ratio_clip;
+        this.sample_without_replacement = sample_without_replacement;
+        this.dim_of_state_space = dim_of_state_space;
+
+        this.states_subset = new float[inner_batch_size * dim_of_state_space];
+        this.actions_subset = new int[inner_batch_size];
+        this.distribution_subset = new float[inner_batch_size];
+        this.expected_returns_subset = new float[inner_batch_size];
+        this.advantages_subset = new float[inner_batch_size];
     }
 
     @Override
-    protected void updateModel(NDManager submanager) throws TranslateException {
-        MemoryBatch batch = memory.getOrderedBatch(submanager);
-        NDArray states = batch.getStates();
-        NDArray actions = batch.getActions();
-
-        NDList net_output = predictor.predict(new NDList(states));
-
-        NDArray distribution = Helper.gather(net_output.get(0).duplicate(), actions.toIntArray());
-        NDArray values = net_output.get(1).duplicate();
-
-        NDList estimates = estimateAdvantage(values.duplicate(), batch.getRewards());
-        NDArray expected_returns = estimates.get(0);
-        NDArray advantages = estimates.get(1);
-
-        int[] index = new int[inner_batch_size];
+    protected void updateModel(NDManager submanager, MemoryBatch batch) throws TranslateException {
+        int batch_size = batch.getBatchSize();
+
+        NDList net_output = predictor.predict(new NDList(batch.getStates()));
+        NDArray values = net_output.get(1);
+        NDList estimates = estimateAdvantage(values, batch, 0.0f);
+
+        float[] states = batch.getStates().toFloatArray();
+        int[] actions = batch.getActions().toIntArray();
+        float[] distribution = Helper.gather(net_output.get(0), batch.getActions()).toFloatArray();
+        float[] expected_returns = estimates.get(0).toFloatArray();
+        float[] advantages = estimates.get(1).toFloatArray();
+
+        if (sample_without_replacement) {
+            shuffle(batch_size);
+            for (int epoch = 0; epoch < inner_updates; epoch++) {
+                for (int start = 0; start < batch_size; start += inner_batch_size) {
+                    int size = Math.min(inner_batch_size, batch_size - start);
+                    for (int j = 0; j < size; j++) {
+                        copyRow(permutation[start + j], j, states, actions, distribution, expected_returns,
+                                advantages);
+                    }
+                    innerUpdate(submanager, size);
+                }
+                shuffle(batch_size);
+            }
 
-        for (int i = 0; i < inner_updates * (1 + batch.size() / inner_batch_size); i++) {
-            for (int j = 0; j < inner_batch_size; j++) {
-                index[j] = random.nextInt(batch.size());
+        } else {
+            for (int i = 0; i < inner_updates * (1 + batch_size / inner_batch_size); i++) {
+                for (int j = 0; j < inner_batch_size; j++) {
+                    copyRow(random.nextInt(batch_size), j, states, actions, distribution, expected_returns,
+                            advantages);
+                }
+                innerUpdate(submanager, inner_batch_size);
             }
-            NDArray states_subset = getSample(submanager, states, index);
-            NDArray actions_subset = getSample(submanager, actions, index);
-            NDArray distribution_subset = getSample(submanager, distribution, index);
-            NDArray expected_returns_subset = getSample(submanager, expected_returns, index);
-            NDArray advantages_subset = getSample(submanager, advantages, index);
-
-            NDList net_output_updated = predictor.predict(new NDList(states_subset));
-            NDArray distribution_updated = Helper.gather(net_output_updated.get(0), actions_subset.toIntArray());
+        }
+    }
+
+    /**
+     * Update the model on the first size rows of the minibatch buffers, which
+     * are uploaded with a single copy per array.
+     * 
+     * @param submanager
+     * @param size
+     * @throws TranslateException
+     */
+    private void innerUpdate(NDManager submanager, int size) throws TranslateException {
+        try (NDManager inner_manager = submanager.newSubManager()) {
+            NDArray states = inner_manager.create(sliceOf(states_subset, size * dim_of_state_space),
+                    new Shape(size, dim_of_state_space));
+            NDArray actions = inner_manager.create(sliceOf(actions_subset, size));
+            NDArray distribution = inner_manager.create(sliceOf(distribution_subset, size));
+            NDArray expected_returns = inner_manager.create(sliceOf(expected_returns_subset, size), new Shape(size, 1));
+            NDArray advantages = inner_manager.create(sliceOf(advantages_subset, size), new Shape(size, 1));
+
+            NDList net_output_updated = DistributionValueModel.forwardTraining(model, new NDList(states));
+            NDArray distribution_updated = Helper.gather(net_output_updated.get(0), actions);
             NDArray values_updated = net_output_updated.get(1);
 
-            NDArray loss_critic = (expected_returns_subset.sub(values_updated)).square().sum();
+            NDArray loss_critic = (expected_returns.sub(values_updated)).square().sum();
 
-            NDArray ratios = distribution_updated.div(distribution_subset).expandDims(1);
+            NDArray ratios = distribution_updated.div(distribution).reshape(size, 1);
 
-            NDArray loss_actor = ratios.clip(ratio_lower_bound, ratio_upper_bound).mul(advantages_subset)
-                    .minimum(ratios.mul(advantages_subset)).sum().neg();
+            NDArray loss_actor = ratios.clip(ratio_lower_bound, ratio_upper_bound).mul(advantages)
+                    .minimum(ratios.mul(advantages)).sum().neg();
             NDArray loss = loss_actor.add(loss_critic);
 
+            recordLoss(loss);
             try (GradientCollector collector = Engine.getInstance().newGradientCollector()) {
+                long start = backward_timer.start();
                 collector.backward(loss);
+                backward_timer.stop(start);
 
+                start = optimizer_timer.start();
                 for (Pair<String, Parameter> params : model.getBlock().getParameters()) {
                     NDArray params_arr = params.getValue().getArray();
 
                     optimizer.update(params.getKey(), params_arr, params_arr.getGradient().duplicate());
                 }
+                optimizer_timer.stop(start);
 
             }
         }
     }
 
-    private NDArray getSample(NDManager submanager, NDArray array, int[] index) {
+    private void copyRow(int row, int j, float[] states, int[] actions, float[] distribution,
+            float[] expected_returns, float[] advantages) {
+        System.arraycopy(states, row * dim_of_state_space, states_subset, j * dim_of_state_space,
+                dim_of_state_space);
+        actions_subset[j] = actions[row];
+        distribution_subset[j] = distribution[row];
+        expected_returns_subset[j] = expected_returns[row];
+        advantages_subset[j] = advantages[row];
+    }
 
-        Shape shape = Shape.update(array.getShape(), 0, inner_batch_size);
-        NDArray sample = submanager.zeros(shape, array.getDataType());
-        for (int i = 0; i < inner_batch_size; i++) {
-            sample.set(new NDIndex(i), array.get(index[i]));
+    /**
+     * Fisher-Yates shuffle of the indexes of the batch.
+     * 
+     * @param batch_size
+     */
+    private void shuffle(int batch_size) {
+        if (permutation.length != batch_size) {
+            permutation = new int[batch_size];
+            for (int i = 0; i < batch_size; i++) {
+                permutation[i] = i;
+            }
+        }
+        for (int i = batch_size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
         }
-        return sample;
+    }
+
+    private static float[] sliceOf(float[] arr, int size) {
+        return size == arr.length ? arr : Arrays.copyOf(arr, size);
+    }
+
+    private static int[] sliceOf(int[] arr, int size) {
+        return size == arr.length ? arr : Arrays.copyOf(arr, size);
     }
 
 }
@@ -7,8 +7,8 @@ import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.translate.TranslateException;
 import main.agent.base.BaseDQN;
-import main.utils.ActionSampler;
 import main.utils.Helper;
+import main.utils.Memory;
 import main.utils.datatype.MemoryBatch;
 
 public class QRDQN extends BaseDQN {
@@ -18,8 +18,14 @@ public class QRDQN extends BaseDQN {
 
     public QRDQN(int dim_of_state_space, int num_of_actions, int num_of_action_bins, int hidden_size, int batch_size,
             int sync_net_interval, float gamma, float learning_rate) {
+        this(dim_of_state_space, num_of_actions, num_of_action_bins, hidden_size, batch_size, sync_net_interval, gamma,
+                learning_rate, new Memory(4096));
+    }
+
+    public QRDQN(int dim_of_state_space, int num_of_actions, int num_of_action_bins, int hidden_size, int batch_size,
+            int sync_net_interval, float gamma, float learning_rate, Memory memory) {
         super(dim_of_state_space, num_of_actions * num_of_action_bins, hidden_size, batch_size, sync_net_interval,
-                gamma, learning_rate);
+                gamma, learning_rate, memory);
         this.num_of_actions = num_of_actions;
         this.num_of_action_bins = num_of_action_bins;
 
@@ -37,10 +43,13 @@ public class QRDQN extends BaseDQN {
     }
 
     @Override
-    protected int getAction(NDManager manager, float[] state) throws TranslateException {
-        NDArray score = target_predictor.predict(new NDList(manager.create(state))).singletonOrThrow()
-                .reshape(num_of_actions, num_of_action_bins).mean(new int[] { 1 });
-        return ActionSampler.epsilonGreedy(score, random, Math.max(MIN_EXPLORE_RATE, epsilon));
+    protected NDArray getScores(NDArray output) {
+        return output.reshape(-1, num_of_actions, num_of_action_bins).mean(new int[] { 2 });
+    }
+
+    @Override
+    protected int getNumOfActionBins() {
+        return num_of_action_bins;
     }
 
     int update = 0;
@@ -56,9 +65,9 @@ public class QRDQN extends BaseDQN {
 
         NDArray next_actions = target.mean(new int[] { 2 }).argMax(1).toType(DataType.INT32, false);
 
-        NDArray expected_returns = Helper.gather(policy, batch.getActions().toIntArray());
+        NDArray expected_returns = Helper.gather(policy, batch.getActions());
         NDArray next_returns = Helper.tile(batch.getRewards(), expected_returns.getShape())
-                .add(Helper.gather(target, next_actions.toIntArray())
+                .add(Helper.gather(target, next_actions)
                         .mul(Helper.tile(batch.getMasks().logicalNot(), expected_returns.getShape())).mul(gamma))
                 .duplicate();
         Shape extended_shape = expected_returns.getShape().add(num_of_action_bins);
@@ -69,7 +78,17 @@ public class QRDQN extends BaseDQN {
         NDArray sq_loss_area = residuals.abs().lt(1);
         NDArray huber = residuals.abs().sub(0.5f).mul(sq_loss_area.logicalNot())
                 .add(residuals.pow(2).mul(0.5).mul(sq_loss_area));
-        NDArray loss = huber.mul(quantiles.sub(residuals.lt(0).toType(DataType.FLOAT32, false)).abs()).mean();
+        NDArray losses = huber.mul(quantiles.sub(residuals.lt(0).toType(DataType.FLOAT32, false)).abs())
+                .mean(new int[] { 1, 2 });
+
+        NDArray weights = batch.getWeights();
+        NDArray loss;
+        if (weights == null) {
+            loss = losses.mean();
+        } else {
+            loss = losses.mul(weights).mean();
+            memory.updatePriorities(batch.getIndexes(), residuals.abs().mean(new int[] { 1, 2 }).toFloatArray());
+        }
 
         gradientUpdate(loss);
 
@@ -0,0 +1,21 @@
+package main.agent.base;
+
+/**
+ * A copy of the policy of an agent for acting on its own thread, refreshed
+ * from the parameters published by the learner.
+ */
+public interface Actor extends AutoCloseable {
+    /**
+     * Calculate the action to the input state.
+     * 
+     * @param state
+     * @return action
+     */
+    int act(float[] state);
+
+    /**
+     * Release the resources of the actor.
+     */
+    @Override
+    void close();
+}
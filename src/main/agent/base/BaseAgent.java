@@ -1,10 +1,34 @@
 package main.agent.base;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import ai.djl.ndarray.NDArray;
+import main.utils.Checkpoint;
+import main.utils.metrics.Counter;
+import main.utils.metrics.Histogram;
+import main.utils.metrics.Metrics;
+import main.utils.metrics.Timer;
+
 public abstract class BaseAgent {
     private boolean is_eval = false;
+    private Metrics metrics = Metrics.DISABLED;
+
+    protected Timer forward_timer = Timer.DISABLED;
+    protected Timer update_timer = Timer.DISABLED;
+    protected Timer backward_timer = Timer.DISABLED;
+    protected Timer optimizer_timer = Timer.DISABLED;
+    protected Counter update_counter = Counter.DISABLED;
+    protected Histogram loss_histogram = Histogram.DISABLED;
 
     /**
-     * Calculate the action to the input state
+     * Calculate the action to the input state. The state may be overwritten by
+     * the environment after the call, so agents copy what they keep.
      * 
      * @param state
      * @return action
@@ -19,6 +43,36 @@ public abstract class BaseAgent {
      */
     public abstract void collect(float reward, boolean done);
 
+    /**
+     * Calculate the actions to a batch of states, one per environment. The
+     * default implementation reacts to the states one by one, which is only
+     * valid for a single environment in the training mode.
+     * 
+     * @param states
+     * @return actions
+     */
+    public int[] react(float[][] states) {
+        assertSingleStream(states.length);
+        int[] actions = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            actions[i] = react(states[i]);
+        }
+        return actions;
+    }
+
+    /**
+     * Collect the results of the previous actions, one per environment.
+     * 
+     * @param rewards
+     * @param dones
+     */
+    public void collect(float[] rewards, boolean[] dones) {
+        assertSingleStream(rewards.length);
+        for (int i = 0; i < rewards.length; i++) {
+            collect(rewards[i], dones[i]);
+        }
+    }
+
     /**
      * Reset the agent.
      */
@@ -47,4 +101,130 @@ public abstract class BaseAgent {
         return is_eval;
     }
 
+    /**
+     * Save a checkpoint to resume the training from, i.e. the parameters of the
+     * models, the state of the optimizers, the counters and the random
+     * generators, and the pending transitions.
+     * 
+     * @param path
+     * @param include_memory whether to include the replay memory of the DQN
+     *                       agents
+     * @throws IOException
+     */
+    public final void save(Path path, boolean include_memory) throws IOException {
+        Checkpoint.commit(writeTemporary(path, include_memory), path);
+    }
+
+    /**
+     * Save a checkpoint, writing the file on a background thread. The call
+     * copies the state other than the replay records, i.e. the parameters, the
+     * optimizer state, the counters and the priorities, before returning. The
+     * replay records are then streamed to the file by the background thread as
+     * they were at the call, while the training goes on, and a
+     * {@link main.utils.MappedMemory} is only flushed. It should be called from
+     * the thread updating the agent.
+     * 
+     * @param path
+     * @param include_memory whether to include the replay memory of the DQN
+     *                       agents
+     * @return future completed with the path once the file is written, or
+     *         completed exceptionally if it cannot be written
+     */
+    public final CompletableFuture<Path> saveAsync(Path path, boolean include_memory) {
+        return Checkpoint.saveAsync(path, output -> writeCheckpoint(output, include_memory));
+    }
+
+    /**
+     * Resume from a checkpoint saved by an agent of the same class and
+     * configuration.
+     * 
+     * @param path
+     * @throws IOException
+     */
+    public final void load(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            readState(input, Checkpoint.readHeader(input, getClass()));
+        }
+    }
+
+    /**
+     * Write the state of the agent into a checkpoint.
+     * 
+     * @param output
+     * @param include_memory
+     * @throws IOException
+     */
+    protected abstract void writeState(DataOutputStream output, boolean include_memory) throws IOException;
+
+    /**
+     * Restore the state written by {@link #writeState(DataOutputStream, boolean)}.
+     * 
+     * @param input
+     * @param include_memory
+     * @throws IOException
+     */
+    protected abstract void readState(DataInputStream input, boolean include_memory) throws IOException;
+
+    /**
+     * Record the time spent in forward passes, model updates, backward passes
+     * and optimizer updates, the number of updates and the losses into the
+     * given metrics.
+     * 
+     * @param metrics
+     */
+    public final void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        this.forward_timer = metrics.timer("agent.forward");
+        this.update_timer = metrics.timer("agent.update_model");
+        this.backward_timer = metrics.timer("agent.backward");
+        this.optimizer_timer = metrics.timer("agent.optimizer");
+        this.update_counter = metrics.counter("agent.updates");
+        this.loss_histogram = metrics.histogram("agent.loss");
+        registerMetrics(metrics);
+    }
+
+    public final Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Register the gauges specific to the agent, e.g. the size of the replay
+     * memory.
+     * 
+     * @param metrics
+     */
+    protected void registerMetrics(Metrics metrics) {
+    }
+
+    /**
+     * Record the loss if metrics are enabled, which copies it to the host.
+     * 
+     * @param loss
+     */
+    protected final void recordLoss(NDArray loss) {
+        if (loss_histogram.isEnabled()) {
+            float value = 0.0f;
+            for (float element : loss.toFloatArray()) {
+                value += element;
+            }
+            loss_histogram.record(value);
+        }
+    }
+
+    private Path writeTemporary(Path path, boolean include_memory) throws IOException {
+        return Checkpoint.writeTemporary(path, output -> writeCheckpoint(output, include_memory));
+    }
+
+    private void writeCheckpoint(DataOutputStream output, boolean include_memory) throws IOException {
+        Checkpoint.writeHeader(output, getClass(), include_memory);
+        writeState(output, include_memory);
+    }
+
+    private void assertSingleStream(int num_of_envs) {
+        if (num_of_envs > 1 && !is_eval) {
+            throw new UnsupportedOperationException(
+                    getClass().getSimpleName() + " does not support training with multiple environments");
+        }
+    }
+
 }
@@ -1,5 +1,8 @@
 package main.agent.base;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Random;
 
 import ai.djl.Model;
@@ -8,6 +11,7 @@ import ai.djl.inference.Predictor;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Parameter;
 import ai.djl.training.GradientCollector;
 import ai.djl.training.optimizer.Optimizer;
@@ -15,15 +19,22 @@ import ai.djl.training.tracker.Tracker;
 import ai.djl.translate.NoopTranslator;
 import ai.djl.translate.TranslateException;
 import ai.djl.util.Pair;
+import ai.djl.util.PairList;
+import main.agent.model.MLPPolicy;
 import main.agent.model.ScoreModel;
+import main.utils.ActionSampler;
+import main.utils.Checkpoint;
 import main.utils.Memory;
+import main.utils.StatefulRandom;
+import main.utils.datatype.Transition;
+import main.utils.metrics.Metrics;
 
 public abstract class BaseDQN extends BaseAgent {
     protected static final float MIN_EXPLORE_RATE = 0.1f;
     protected static final float DECAY_EXPLORE_RATE = 0.99f;
 
-    protected final Random random = new Random(0);
-    protected final Memory memory = new Memory(4096);
+    protected final StatefulRandom random = new StatefulRandom(0);
+    protected final Memory memory;
 
     private final int dim_of_state_space;
     private final int num_of_actions;
@@ -45,8 +56,28 @@ public abstract class BaseDQN extends BaseAgent {
     private int iteration = 0;
     protected float epsilon = 1.0f;
 
+    private volatile PolicySnapshot published;
+
+    private float[][] vector_states;
+    private int[] vector_actions;
+    private float[] vector_rewards;
+    private boolean[] vector_pending;
+
     protected BaseDQN(int dim_of_state_space, int num_of_actions, int hidden_size, int batch_size,
             int sync_net_interval, float gamma, float learning_rate) {
+        this(dim_of_state_space, num_of_actions, hidden_size, batch_size, sync_net_interval, gamma, learning_rate,
+                new Memory(4096));
+    }
+
+    /**
+     * Create an agent with the given replay memory, e.g.
+     * {@link main.utils.PrioritizedMemory}.
+     * 
+     * @param memory
+     */
+    protected BaseDQN(int dim_of_state_space, int num_of_actions, int hidden_size, int batch_size,
+            int sync_net_interval, float gamma, float learning_rate, Memory memory) {
+        this.memory = memory;
         this.dim_of_state_space = dim_of_state_space;
         this.num_of_actions = num_of_actions;
         this.hidden_size = hidden_size;
@@ -65,11 +96,15 @@ public abstract class BaseDQN extends BaseAgent {
             if (!isEval()) {
                 memory.setState(state);
                 if (memory.size() > batch_size) {
-                    updateModel(submanager);
+                    update(submanager);
                 }
             }
 
-            action = getAction(submanager, state);
+            long start = forward_timer.start();
+            NDArray scores = getScores(
+                    target_predictor.predict(new NDList(submanager.create(state))).singletonOrThrow());
+            forward_timer.stop(start);
+            action = ActionSampler.epsilonGreedy(scores, random, Math.max(MIN_EXPLORE_RATE, epsilon));
 
             if (!isEval()) {
                 memory.setAction(action);
@@ -89,6 +124,64 @@ public abstract class BaseDQN extends BaseAgent {
         }
     }
 
+    /**
+     * React to all the environments with a single forward pass. In the training
+     * mode, the transitions of each environment are added to the memory
+     * separately, and the model is updated once per call.
+     */
+    @Override
+    public final int[] react(float[][] states) {
+        int[] actions = new int[states.length];
+        try (NDManager submanager = manager.newSubManager()) {
+            if (!isEval()) {
+                if (vector_states == null || vector_states.length != states.length) {
+                    vector_states = new float[states.length][states[0].length];
+                    vector_actions = new int[states.length];
+                    vector_rewards = new float[states.length];
+                    vector_pending = new boolean[states.length];
+                }
+                for (int i = 0; i < states.length; i++) {
+                    if (vector_pending[i]) {
+                        memory.add(vector_states[i], states[i], vector_actions[i], vector_rewards[i], false);
+                    }
+                    System.arraycopy(states[i], 0, vector_states[i], 0, states[i].length);
+                }
+                if (memory.size() > batch_size) {
+                    update(submanager);
+                }
+            }
+
+            long start = forward_timer.start();
+            NDArray scores = getScores(
+                    target_predictor.predict(new NDList(submanager.create(states))).singletonOrThrow());
+            forward_timer.stop(start);
+            ActionSampler.epsilonGreedyBatch(scores.toFloatArray(), (int) scores.getShape().get(1), random,
+                    Math.max(MIN_EXPLORE_RATE, epsilon), actions);
+
+            if (!isEval()) {
+                System.arraycopy(actions, 0, vector_actions, 0, actions.length);
+            }
+
+        } catch (TranslateException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return actions;
+    }
+
+    @Override
+    public final void collect(float[] rewards, boolean[] dones) {
+        if (!isEval()) {
+            for (int i = 0; i < rewards.length; i++) {
+                if (dones[i]) {
+                    memory.add(vector_states[i], null, vector_actions[i], rewards[i], true);
+                }
+                vector_rewards[i] = rewards[i];
+                vector_pending[i] = !dones[i];
+            }
+        }
+    }
+
     @Override
     public final void reset() {
         optimizer = Optimizer.adam().optLearningRateTracker(Tracker.fixed(learning_rate)).build();
@@ -104,6 +197,92 @@ public abstract class BaseDQN extends BaseAgent {
         syncNets();
     }
 
+    /**
+     * Create an actor acting with the latest published parameters. The actor is
+     * meant to run on its own thread, concurrently with {@link #learn()}.
+     * 
+     * @param seed
+     * @return actor
+     */
+    public final Actor newActor(long seed) {
+        if (published == null) {
+            publish();
+        }
+        return new PolicyActor(seed);
+    }
+
+    /**
+     * Add a transition collected by an actor to the memory.
+     * 
+     * @param transition
+     */
+    public final void store(Transition transition) {
+        memory.add(transition.getState(), transition.getNextState(), transition.getAction(), transition.getReward(),
+                transition.isMasked());
+    }
+
+    /**
+     * Update the model once if the memory holds enough transitions.
+     * 
+     * @return true if the model has been updated
+     */
+    public final boolean learn() {
+        if (memory.size() <= batch_size) {
+            return false;
+        }
+        try (NDManager submanager = manager.newSubManager()) {
+            update(submanager);
+        } catch (TranslateException e) {
+            throw new IllegalStateException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Publish a copy of the parameters of the target net, which
+     * {@link #react(float[])} acts with, and the exploration rate to the actors,
+     * so that an actor behaves as the agent on a single thread. Once published,
+     * the parameters are published again whenever the target net is synced,
+     * which is the only time they or the exploration rate change.
+     */
+    public final void publish() {
+        PairList<String, Parameter> parameters = target_net.getBlock().getParameters();
+        String[] names = new String[parameters.size()];
+        Shape[] shapes = new Shape[parameters.size()];
+        float[][] values = new float[parameters.size()][];
+
+        int i = 0;
+        for (Pair<String, Parameter> params : parameters) {
+            NDArray params_arr = params.getValue().getArray();
+            names[i] = params.getKey();
+            shapes[i] = params_arr.getShape();
+            values[i] = params_arr.toFloatArray();
+            i++;
+        }
+
+        int version = published == null ? 0 : published.version + 1;
+        published = new PolicySnapshot(version, names, shapes, values, Math.max(MIN_EXPLORE_RATE, epsilon));
+    }
+
+    /**
+     * Copy the net used by {@link #react(float[])} into a policy evaluated
+     * without the engine.
+     * 
+     * @return policy
+     */
+    public final MLPPolicy exportPolicy() {
+        return ScoreModel.export(target_net, getNumOfActionBins());
+    }
+
+    /**
+     * Return the number of outputs of the net per action.
+     * 
+     * @return number of outputs averaged into a score
+     */
+    protected int getNumOfActionBins() {
+        return 1;
+    }
+
     protected final void syncNets() {
         for (Pair<String, Parameter> params : policy_net.getBlock().getParameters()) {
             target_net.getBlock().getParameters().get(params.getKey())
@@ -111,16 +290,89 @@ public abstract class BaseDQN extends BaseAgent {
         }
 
         target_predictor = target_net.newPredictor(new NoopTranslator());
+        if (published != null) {
+            publish();
+        }
+    }
+
+    /**
+     * Write both nets, the optimizer, the counters, and, if included, the replay
+     * memory and the transitions pending in each environment.
+     */
+    @Override
+    protected void writeState(DataOutputStream output, boolean include_memory) throws IOException {
+        Checkpoint.writeParameters(output, policy_net);
+        Checkpoint.writeParameters(output, target_net);
+        Checkpoint.writeOptimizer(output, optimizer);
+        output.writeInt(iteration);
+        output.writeFloat(epsilon);
+        output.writeLong(random.getState());
+        if (!include_memory) {
+            return;
+        }
+
+        memory.save(output);
+        output.writeBoolean(vector_states != null);
+        if (vector_states != null) {
+            output.writeInt(vector_states.length);
+            for (float[] state : vector_states) {
+                Checkpoint.writeFloats(output, state);
+            }
+            Checkpoint.writeInts(output, vector_actions);
+            Checkpoint.writeFloats(output, vector_rewards);
+            Checkpoint.writeBooleans(output, vector_pending);
+        }
+    }
+
+    @Override
+    protected void readState(DataInputStream input, boolean include_memory) throws IOException {
+        Checkpoint.readParameters(input, policy_net);
+        Checkpoint.readParameters(input, target_net);
+        Checkpoint.readOptimizer(input, optimizer, policy_net);
+        iteration = input.readInt();
+        epsilon = input.readFloat();
+        random.setState(input.readLong());
+        if (published != null) {
+            publish();
+        }
+        if (!include_memory) {
+            return;
+        }
+
+        memory.load(input);
+        vector_states = null;
+        if (input.readBoolean()) {
+            vector_states = new float[input.readInt()][];
+            for (int i = 0; i < vector_states.length; i++) {
+                vector_states[i] = Checkpoint.readFloats(input);
+            }
+            vector_actions = Checkpoint.readInts(input);
+            vector_rewards = Checkpoint.readFloats(input);
+            vector_pending = Checkpoint.readBooleans(input);
+        }
+    }
+
+    @Override
+    protected void registerMetrics(Metrics metrics) {
+        metrics.gauge("agent.epsilon", () -> Math.max(MIN_EXPLORE_RATE, epsilon));
+        metrics.gauge("memory.size", memory::size);
+        metrics.gauge("ndarray.count", () -> Metrics.countResources(manager));
     }
 
     protected final void gradientUpdate(NDArray loss) {
+        recordLoss(loss);
         try (GradientCollector collector = Engine.getInstance().newGradientCollector()) {
+            long start = backward_timer.start();
             collector.backward(loss);
+            backward_timer.stop(start);
+
+            start = optimizer_timer.start();
             for (Pair<String, Parameter> params : policy_net.getBlock().getParameters()) {
                 NDArray params_arr = params.getValue().getArray();
                 optimizer.update(params.getKey(), params_arr, params_arr.getGradient());
 
             }
+            optimizer_timer.stop(start);
         }
 
         if (iteration++ % sync_net_interval == 0) {
@@ -129,7 +381,93 @@ public abstract class BaseDQN extends BaseAgent {
         }
     }
 
-    protected abstract int getAction(NDManager manager, float[] state) throws TranslateException;
+    private void update(NDManager submanager) throws TranslateException {
+        long start = update_timer.start();
+        updateModel(submanager);
+        update_timer.stop(start);
+        update_counter.increment();
+    }
+
+    /**
+     * Immutable copy of the parameters published to the actors.
+     */
+    private static final class PolicySnapshot {
+        private final int version;
+        private final String[] names;
+        private final Shape[] shapes;
+        private final float[][] values;
+        private final float epsilon;
+
+        private PolicySnapshot(int version, String[] names, Shape[] shapes, float[][] values, float epsilon) {
+            this.version = version;
+            this.names = names;
+            this.shapes = shapes;
+            this.values = values;
+            this.epsilon = epsilon;
+        }
+    }
+
+    private final class PolicyActor implements Actor {
+        private final Random actor_random;
+        private final NDManager actor_manager = NDManager.newBaseManager();
+        private final Model actor_net = ScoreModel.newModel(actor_manager, dim_of_state_space, hidden_size,
+                num_of_actions);
+
+        private Predictor<NDList, NDList> actor_predictor;
+        private PolicySnapshot snapshot;
+
+        private PolicyActor(long seed) {
+            this.actor_random = new Random(seed);
+        }
+
+        @Override
+        public int act(float[] state) {
+            PolicySnapshot latest = published;
+            if (snapshot == null || snapshot.version != latest.version) {
+                load(latest);
+            }
+
+            try (NDManager submanager = actor_manager.newSubManager()) {
+                NDArray scores = getScores(
+                        actor_predictor.predict(new NDList(submanager.create(state))).singletonOrThrow());
+                return ActionSampler.epsilonGreedy(scores, actor_random, snapshot.epsilon);
+            } catch (TranslateException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (actor_predictor != null) {
+                actor_predictor.close();
+            }
+            actor_manager.close();
+        }
+
+        private void load(PolicySnapshot latest) {
+            PairList<String, Parameter> parameters = actor_net.getBlock().getParameters();
+            for (int i = 0; i < latest.names.length; i++) {
+                Parameter parameter = parameters.get(latest.names[i]);
+                NDArray previous = parameter.getArray();
+                parameter.setArray(actor_manager.create(latest.values[i], latest.shapes[i]));
+                previous.close();
+            }
+
+            if (actor_predictor != null) {
+                actor_predictor.close();
+            }
+            actor_predictor = actor_net.newPredictor(new NoopTranslator());
+            snapshot = latest;
+        }
+    }
+
+    /**
+     * Convert the outputs of the network to the scores of the actions.
+     * 
+     * @param output of shape (dim of output) or (batch size, dim of output)
+     * @return scores, of shape (batch size, number of actions) for batched output
+     */
+    protected abstract NDArray getScores(NDArray output);
 
     protected abstract void updateModel(NDManager manager) throws TranslateException;
 
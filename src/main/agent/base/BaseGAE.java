@@ -1,23 +1,30 @@
 package main.agent.base;
 
-import java.util.Random;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 import ai.djl.Model;
 import ai.djl.inference.Predictor;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
-import ai.djl.ndarray.index.NDIndex;
 import ai.djl.training.optimizer.Optimizer;
 import ai.djl.training.tracker.Tracker;
 import ai.djl.translate.NoopTranslator;
 import ai.djl.translate.TranslateException;
 import main.agent.model.DistributionValueModel;
+import main.agent.model.MLPPolicy;
 import main.utils.ActionSampler;
+import main.utils.Checkpoint;
 import main.utils.Memory;
+import main.utils.RolloutBuffer;
+import main.utils.StatefulRandom;
+import main.utils.datatype.MemoryBatch;
+import main.utils.metrics.Metrics;
 
 public abstract class BaseGAE extends BaseAgent {
-    protected final Random random = new Random(0);
+    protected final StatefulRandom random = new StatefulRandom(0);
     protected final Memory memory = new Memory(1024);
     protected final Optimizer optimizer;
 
@@ -30,9 +37,31 @@ public abstract class BaseGAE extends BaseAgent {
     private final int num_of_action;
     private final int dim_of_state_space;
     private final int hidden_size;
+    private final int horizon;
+
+    private RolloutBuffer rollout;
+    private final float[][] single_state = new float[1][];
+    private final float[] single_reward = new float[1];
+    private final boolean[] single_done = new boolean[1];
 
     public BaseGAE(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
             float learning_rate) {
+        this(dim_of_state_space, num_of_action, hidden_size, gamma, gae_lambda, learning_rate, 0);
+    }
+
+    /**
+     * Create an agent updated on fixed-length rollouts instead of episodes.
+     * Every horizon steps, the transitions of all the environments are gathered
+     * into one batch, and the trajectories cut by the horizon are bootstrapped
+     * with the value of their next states.
+     * 
+     * @param horizon number of steps per environment between two updates, or 0
+     *                to update at the end of every episode of a single
+     *                environment
+     */
+    public BaseGAE(int dim_of_state_space, int num_of_action, int hidden_size, float gamma, float gae_lambda,
+            float learning_rate, int horizon) {
+        this.horizon = horizon;
         this.gae_lambda = gae_lambda;
         this.gamma = gamma;
         this.dim_of_state_space = dim_of_state_space;
@@ -44,12 +73,19 @@ public abstract class BaseGAE extends BaseAgent {
 
     @Override
     public int react(float[] state) {
+        if (horizon > 0 && !isEval()) {
+            single_state[0] = state;
+            return react(single_state)[0];
+        }
+
         try (NDManager submanager = manager.newSubManager()) {
             if (!isEval()) {
                 memory.setState(state);
             }
 
+            long start = forward_timer.start();
             NDArray prob = predictor.predict(new NDList(submanager.create(state))).get(0);
+            forward_timer.stop(start);
             int action = ActionSampler.sampleMultinomial(prob, random);
 
             if (!isEval()) {
@@ -63,13 +99,45 @@ public abstract class BaseGAE extends BaseAgent {
         }
     }
 
+    /**
+     * React to all the environments with a single forward pass. In the training
+     * mode, this requires a positive horizon, and the model is updated once the
+     * rollout is full.
+     */
+    @Override
+    public int[] react(float[][] states) {
+        if (!isEval()) {
+            return horizon > 0 ? reactWithRollout(states) : super.react(states);
+        }
+
+        int[] actions = new int[states.length];
+        try (NDManager submanager = manager.newSubManager()) {
+            long start = forward_timer.start();
+            NDArray prob = predictor.predict(new NDList(submanager.create(states))).get(0);
+            forward_timer.stop(start);
+            ActionSampler.sampleMultinomialBatch(prob.toFloatArray(), num_of_action, random, actions);
+
+        } catch (TranslateException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return actions;
+    }
+
     @Override
     public void collect(float reward, boolean done) {
         if (!isEval()) {
+            if (horizon > 0) {
+                single_reward[0] = reward;
+                single_done[0] = done;
+                rollout.setRewardsAndMasks(single_reward, single_done);
+                return;
+            }
+
             memory.setRewardAndMask(reward, done);
             if (done) {
                 try (NDManager submanager = manager.newSubManager()) {
-                    updateModel(submanager);
+                    update(submanager, memory.getOrderedBatch(submanager));
                 } catch (TranslateException e) {
                     throw new IllegalStateException(e);
                 }
@@ -78,6 +146,15 @@ public abstract class BaseGAE extends BaseAgent {
         }
     }
 
+    @Override
+    public void collect(float[] rewards, boolean[] dones) {
+        if (!isEval() && horizon > 0) {
+            rollout.setRewardsAndMasks(rewards, dones);
+        } else {
+            super.collect(rewards, dones);
+        }
+    }
+
     @Override
     public void reset() {
         if (manager != null) {
@@ -86,21 +163,178 @@ public abstract class BaseGAE extends BaseAgent {
         manager = NDManager.newBaseManager();
         model = DistributionValueModel.newModel(manager, dim_of_state_space, hidden_size, num_of_action);
         predictor = model.newPredictor(new NoopTranslator());
+        rollout = null;
     }
 
+    /**
+     * Copy the model into a policy evaluated without the engine.
+     * 
+     * @return policy
+     */
+    public final MLPPolicy exportPolicy() {
+        return DistributionValueModel.export(model);
+    }
+
+    /**
+     * Write the model, the optimizer, the random generator, and the episode or
+     * the rollout collected since the last update, which are always included.
+     */
+    @Override
+    protected void writeState(DataOutputStream output, boolean include_memory) throws IOException {
+        Checkpoint.writeParameters(output, model);
+        Checkpoint.writeFloats(output, DistributionValueModel.getStatistics(model));
+        Checkpoint.writeOptimizer(output, optimizer);
+        output.writeLong(random.getState());
+        memory.save(output);
+        output.writeInt(rollout == null ? 0 : rollout.getNumOfEnvs());
+        if (rollout != null) {
+            rollout.save(output);
+        }
+    }
+
+    @Override
+    protected void readState(DataInputStream input, boolean include_memory) throws IOException {
+        Checkpoint.readParameters(input, model);
+        DistributionValueModel.setStatistics(model, Checkpoint.readFloats(input));
+        Checkpoint.readOptimizer(input, optimizer, model);
+        random.setState(input.readLong());
+        memory.load(input);
+        int num_of_envs = input.readInt();
+        rollout = null;
+        if (num_of_envs > 0) {
+            rollout = new RolloutBuffer(num_of_envs, horizon, dim_of_state_space);
+            rollout.load(input);
+        }
+    }
+
+    @Override
+    protected void registerMetrics(Metrics metrics) {
+        metrics.gauge("memory.size", () -> rollout == null ? memory.size() : rollout.size());
+        metrics.gauge("ndarray.count", () -> Metrics.countResources(manager));
+    }
+
+    /**
+     * Estimate the expected returns and the advantages of a single episode,
+     * which ends at the last step.
+     * 
+     * @param values  of shape (episode length, 1)
+     * @param rewards of shape (episode length)
+     * @return expected returns and advantages, both of shape (episode length)
+     */
     protected NDList estimateAdvantage(NDArray values, NDArray rewards) {
-        NDArray expected_returns = rewards.duplicate();
-        NDArray advantages = rewards.sub(values.squeeze());
-        for (long i = expected_returns.getShape().get(0) - 2; i >= 0; i--) {
-            NDIndex index = new NDIndex(i);
-            expected_returns.set(index, expected_returns.get(i).add(expected_returns.get(i + 1).mul(gamma)));
-            advantages.set(index,
-                    advantages.get(i).add(values.get(i + 1).add(advantages.get(i + 1).mul(gae_lambda)).mul(gamma)));
+        float[] reward_arr = rewards.toFloatArray();
+        boolean[] masks = new boolean[reward_arr.length];
+        masks[masks.length - 1] = true;
+
+        return upload(rewards.getManager(), values.toFloatArray(), reward_arr, masks, 0.0f);
+    }
+
+    /**
+     * Estimate the expected returns and the advantages of the transitions of an
+     * ordered batch, which may span several episodes. The values, rewards and
+     * masks are each copied to the host once.
+     * 
+     * @param values     of shape (batch size, 1)
+     * @param batch      transitions ordered by time within each trajectory
+     * @param last_value value of the state following the last transition, used
+     *                   if the last transition is not terminal
+     * @return expected returns and advantages, both of shape (batch size)
+     */
+    protected final NDList estimateAdvantage(NDArray values, MemoryBatch batch, float last_value) {
+        return upload(values.getManager(), values.toFloatArray(), batch.getRewards().toFloatArray(),
+                batch.getMasks().toBooleanArray(), last_value);
+    }
+
+    /**
+     * Compute the discounted returns and the generalized advantages in a single
+     * backward pass. Both are reset after every terminal transition.
+     * 
+     * @param values     value of each state
+     * @param rewards
+     * @param masks      true if the transition is terminal
+     * @param last_value value of the state following the last transition, used
+     *                   if the last transition is not terminal
+     * @param gamma
+     * @param gae_lambda
+     * @param returns    output of the same length as rewards
+     * @param advantages output of the same length as rewards
+     */
+    protected static void estimateAdvantage(float[] values, float[] rewards, boolean[] masks, float last_value,
+            float gamma, float gae_lambda, float[] returns, float[] advantages) {
+        float next_value = last_value;
+        float next_return = last_value;
+        float next_advantage = 0.0f;
+
+        for (int i = rewards.length - 1; i >= 0; i--) {
+            if (masks[i]) {
+                next_value = 0.0f;
+                next_return = 0.0f;
+                next_advantage = 0.0f;
+            }
+            next_return = rewards[i] + gamma * next_return;
+            next_advantage = rewards[i] + gamma * next_value - values[i] + gamma * gae_lambda * next_advantage;
+
+            returns[i] = next_return;
+            advantages[i] = next_advantage;
+            next_value = values[i];
         }
+    }
+
+    private NDList upload(NDManager manager, float[] values, float[] rewards, boolean[] masks, float last_value) {
+        float[] returns = new float[rewards.length];
+        float[] advantages = new float[rewards.length];
+        estimateAdvantage(values, rewards, masks, last_value, gamma, gae_lambda, returns, advantages);
+
+        return new NDList(manager.create(returns), manager.create(advantages));
+    }
+
+    private int[] reactWithRollout(float[][] states) {
+        if (rollout == null || rollout.getNumOfEnvs() != states.length) {
+            rollout = new RolloutBuffer(states.length, horizon, dim_of_state_space);
+        }
+
+        int[] actions = new int[states.length];
+        try (NDManager submanager = manager.newSubManager()) {
+            NDArray input = submanager.create(states);
+            long start = forward_timer.start();
+            NDList output = predictor.predict(new NDList(input));
+            forward_timer.stop(start);
+
+            if (rollout.isFull()) {
+                rollout.bootstrap(states, output.get(1).toFloatArray(), gamma);
+                update(submanager, rollout.getBatch(submanager));
+                rollout.clear();
+
+                start = forward_timer.start();
+                output = predictor.predict(new NDList(input));
+                forward_timer.stop(start);
+            }
+
+            ActionSampler.sampleMultinomialBatch(output.get(0).toFloatArray(), num_of_action, random, actions);
+            rollout.add(states, actions);
+
+        } catch (TranslateException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return actions;
+    }
 
-        return new NDList(expected_returns, advantages);
+    private void update(NDManager submanager, MemoryBatch batch) throws TranslateException {
+        long start = update_timer.start();
+        updateModel(submanager, batch);
+        update_timer.stop(start);
+        update_counter.increment();
     }
 
-    protected abstract void updateModel(NDManager submanager) throws TranslateException;
+    /**
+     * Update the model on a batch of transitions, ordered by time within each
+     * trajectory, and whose trajectories all end with a masked transition.
+     * 
+     * @param submanager
+     * @param batch
+     * @throws TranslateException
+     */
+    protected abstract void updateModel(NDManager submanager, MemoryBatch batch) throws TranslateException;
 
 }
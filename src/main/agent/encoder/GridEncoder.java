@@ -0,0 +1,66 @@
+package main.agent.encoder;
+
+/**
+ * Uniform grid over the state space with state_resolution cells per
+ * coordinate, of which a state activates exactly one. The number of cells
+ * grows as state_resolution^dim.
+ */
+public final class GridEncoder implements StateEncoder {
+    private final double[][] state_ranges;
+    private final int state_resolution;
+    private final int num_of_features;
+
+    public GridEncoder(double[][] state_ranges, int state_resolution) {
+        this.state_ranges = StateEncoder.copyRanges(state_ranges);
+        this.state_resolution = state_resolution;
+
+        int num_of_features = 1;
+        for (int i = 0; i < state_ranges.length; i++) {
+            num_of_features = Math.multiplyExact(num_of_features, state_resolution);
+        }
+        this.num_of_features = num_of_features;
+    }
+
+    @Override
+    public int getDimOfState() {
+        return state_ranges.length;
+    }
+
+    @Override
+    public int getNumOfFeatures() {
+        return num_of_features;
+    }
+
+    @Override
+    public int getNumOfActiveFeatures() {
+        return 1;
+    }
+
+    @Override
+    public void encode(float[] state, int[] features) {
+        features[0] = encode(state);
+    }
+
+    /**
+     * Return the index of the cell of the state, in row-major order.
+     * 
+     * @param state
+     * @return index of the cell
+     */
+    public int encode(float[] state) {
+        int state_value = 0;
+        for (int i = 0; i < state.length; i++) {
+            state_value *= state_resolution;
+            int value = (int) (state_resolution * StateEncoder.normalize(state[i], state_ranges[i]));
+            if (value >= state_resolution) {
+                value = state_resolution - 1;
+            }
+            if (value < 0) {
+                value = 0;
+            }
+            state_value += value;
+        }
+
+        return state_value;
+    }
+}
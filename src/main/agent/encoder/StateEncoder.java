@@ -0,0 +1,59 @@
+package main.agent.encoder;
+
+/**
+ * Map of a continuous state to a fixed number of active features among
+ * getNumOfFeatures(), e.g. the cell of a grid, or one tile per tiling of a
+ * {@link TileCoder}. A linear function of the state is then the sum of the
+ * weights of its active features.
+ */
+public interface StateEncoder {
+    int getDimOfState();
+
+    int getNumOfFeatures();
+
+    int getNumOfActiveFeatures();
+
+    /**
+     * Write the indexes of the active features of the state.
+     * 
+     * @param state
+     * @param features output of length getNumOfActiveFeatures(), with values in
+     *                 [0, getNumOfFeatures())
+     */
+    void encode(float[] state, int[] features);
+
+    /**
+     * Scale a coordinate of the state to [0, 1] within its range. An infinite
+     * range is mapped through atan, which is applied to the coordinate as well
+     * as to the bounds; the result is not clipped.
+     * 
+     * @param value
+     * @param range lower and upper bounds
+     * @return scaled value
+     */
+    static double normalize(double value, double[] range) {
+        if (Double.isInfinite(range[0]) || Double.isInfinite(range[1])) {
+            double lower = Math.atan(range[0]);
+            return (Math.atan(value) - lower) / (Math.atan(range[1]) - lower);
+        }
+        return (value - range[0]) / (range[1] - range[0]);
+    }
+
+    /**
+     * Copy and validate the ranges of the coordinates of the states.
+     * 
+     * @param state_ranges lower and upper bounds of each coordinate
+     * @return copy
+     */
+    static double[][] copyRanges(double[][] state_ranges) {
+        double[][] copy = new double[state_ranges.length][];
+        for (int i = 0; i < state_ranges.length; i++) {
+            double[] range = state_ranges[i];
+            if (range == null || range.length != 2) {
+                throw new IllegalArgumentException("Invalid state range");
+            }
+            copy[i] = range.clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,75 @@
+package main.agent.encoder;
+
+/**
+ * Hashed tile coding. Each of the num_of_tilings grids has
+ * tiles_per_dimension tiles per coordinate over the state ranges, and is
+ * offset from the first one by tiling / num_of_tilings of a tile along the
+ * displacement vector (1, 3, 5, ...), so that neighbouring states share most
+ * of their tiles. The coordinates of the tile of a state in each tiling are
+ * hashed into a fixed number of features, which bounds the memory whatever the
+ * dimension of the states, at the price of occasional collisions.
+ */
+public final class TileCoder implements StateEncoder {
+    private final double[][] state_ranges;
+    private final int num_of_tilings;
+    private final int tiles_per_dimension;
+    private final int num_of_features;
+
+    /**
+     * @param state_ranges        lower and upper bounds of each coordinate
+     * @param num_of_tilings      number of active features of every state
+     * @param tiles_per_dimension number of tiles spanning each range
+     * @param num_of_features     size of the hashed table, a power of two
+     */
+    public TileCoder(double[][] state_ranges, int num_of_tilings, int tiles_per_dimension, int num_of_features) {
+        if (num_of_features <= 0 || Integer.bitCount(num_of_features) != 1) {
+            throw new IllegalArgumentException("Expected a power of two features but got " + num_of_features);
+        }
+        this.state_ranges = StateEncoder.copyRanges(state_ranges);
+        this.num_of_tilings = num_of_tilings;
+        this.tiles_per_dimension = tiles_per_dimension;
+        this.num_of_features = num_of_features;
+    }
+
+    @Override
+    public int getDimOfState() {
+        return state_ranges.length;
+    }
+
+    @Override
+    public int getNumOfFeatures() {
+        return num_of_features;
+    }
+
+    @Override
+    public int getNumOfActiveFeatures() {
+        return num_of_tilings;
+    }
+
+    @Override
+    public void encode(float[] state, int[] features) {
+        for (int tiling = 0; tiling < num_of_tilings; tiling++) {
+            long hash = tiling;
+            for (int i = 0; i < state.length; i++) {
+                double value = Math.min(1.0, Math.max(0.0, StateEncoder.normalize(state[i], state_ranges[i])));
+                double offset = (double) (tiling * (2 * i + 1) % num_of_tilings) / num_of_tilings;
+                long tile = (long) Math.floor(value * tiles_per_dimension + offset);
+                hash = mix(hash * 31 + tile);
+            }
+            features[tiling] = (int) (hash & (num_of_features - 1));
+        }
+    }
+
+    /**
+     * Finalizer of SplitMix64, which spreads every bit of the input over the
+     * output.
+     * 
+     * @param value
+     * @return hash
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -1,5 +1,7 @@
 package main.agent.model;
 
+import java.nio.FloatBuffer;
+
 import ai.djl.Model;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
@@ -26,8 +28,9 @@ public class DistributionValueModel extends BaseModel {
     private final int output_size;
     private final Parameter gamma;
     private final Parameter beta;
-    private float moving_mean = 0.0f;
-    private float moving_var = 1.0f;
+    private NDArray moving_mean;
+    private NDArray moving_var;
+    private ParameterStore parameter_store;
 
     private DistributionValueModel(NDManager manager, int hidden_size, int output_size) {
         super(manager);
@@ -51,13 +54,67 @@ public class DistributionValueModel extends BaseModel {
         return model;
     }
 
+    /**
+     * Run the forward pass of an update, which also moves the statistics
+     * normalizing the scores. Predictors run the inference pass, which uses the
+     * statistics as they are, so that acting and evaluating never change them.
+     * 
+     * @param model  created by {@link #newModel(NDManager, int, int, int)}
+     * @param inputs
+     * @return distribution and value
+     */
+    public static NDList forwardTraining(Model model, NDList inputs) {
+        DistributionValueModel net = (DistributionValueModel) model.getBlock();
+        if (net.parameter_store == null) {
+            net.parameter_store = new ParameterStore(net.getManager(), false);
+        }
+        return net.forward(net.parameter_store, inputs, true);
+    }
+
+    /**
+     * Copy the weights of the model into a {@link MLPPolicy}. The moving
+     * statistics normalizing the scores are frozen at their current values.
+     * 
+     * @param model created by {@link #newModel(NDManager, int, int, int)}
+     * @return policy
+     */
+    public static MLPPolicy export(Model model) {
+        float[] statistics = getStatistics(model);
+        return MLPPolicy.ofDistribution(model, statistics[0], statistics[1], LAYERNORM_EPSILON);
+    }
+
+    /**
+     * Copy the moving mean and variance of the scores to the host, e.g. for a
+     * checkpoint.
+     * 
+     * @param model created by {@link #newModel(NDManager, int, int, int)}
+     * @return mean and variance
+     */
+    public static float[] getStatistics(Model model) {
+        DistributionValueModel net = (DistributionValueModel) model.getBlock();
+        return new float[] { net.moving_mean.getFloat(), net.moving_var.getFloat() };
+    }
+
+    /**
+     * Restore the statistics returned by {@link #getStatistics(Model)}.
+     * 
+     * @param model      created by {@link #newModel(NDManager, int, int, int)}
+     * @param statistics mean and variance
+     */
+    public static void setStatistics(Model model, float[] statistics) {
+        DistributionValueModel net = (DistributionValueModel) model.getBlock();
+        net.moving_mean.set(FloatBuffer.wrap(new float[] { statistics[0] }));
+        net.moving_var.set(FloatBuffer.wrap(new float[] { statistics[1] }));
+    }
+
     @Override
     public NDList forward(ParameterStore parameter_store, NDList inputs, boolean training,
             PairList<String, Object> params) {
 
         NDList hidden = new NDList(
                 Activation.relu(linear_input.forward(parameter_store, inputs, training).singletonOrThrow()));
-        NDArray scores = normalize(linear_action.forward(parameter_store, hidden, training).singletonOrThrow());
+        NDArray scores = normalize(linear_action.forward(parameter_store, hidden, training).singletonOrThrow(),
+                training);
         NDArray distribution = scores.softmax(scores.getShape().dimension() - 1);
 
         NDArray value = linear_value.forward(parameter_store, hidden, training).singletonOrThrow();
@@ -76,14 +133,27 @@ public class DistributionValueModel extends BaseModel {
         linear_input.initialize(manager, data_type, input_shapes[0]);
         linear_action.initialize(manager, data_type, new Shape(hidden_size));
         linear_value.initialize(manager, data_type, new Shape(hidden_size));
+        moving_mean = manager.zeros(new Shape(1));
+        moving_var = manager.ones(new Shape(1));
     }
 
-    private NDArray normalize(NDArray arr) {
-        float score_mean = arr.mean().getFloat();
-        moving_mean = moving_mean * LAYERNORM_MOMENTUM + score_mean * (1.0f - LAYERNORM_MOMENTUM);
-        moving_var = moving_var * LAYERNORM_MOMENTUM
-                + arr.sub(score_mean).pow(2).mean().getFloat() * (1.0f - LAYERNORM_MOMENTUM);
-        return arr.sub(moving_mean).div(Math.sqrt(moving_var + LAYERNORM_EPSILON)).mul(gamma.getArray())
+    /**
+     * Normalize the scores with their moving statistics, which are updated in
+     * place on the engine during training only. The batch statistics are
+     * detached from the graph, and nothing is copied to the host.
+     * 
+     * @param arr
+     * @param training
+     * @return normalized scores
+     */
+    private NDArray normalize(NDArray arr, boolean training) {
+        if (training) {
+            NDArray score_mean = arr.mean().stopGradient();
+            NDArray score_var = arr.sub(score_mean).square().mean().stopGradient();
+            moving_mean.muli(LAYERNORM_MOMENTUM).addi(score_mean.mul(1.0f - LAYERNORM_MOMENTUM));
+            moving_var.muli(LAYERNORM_MOMENTUM).addi(score_var.mul(1.0f - LAYERNORM_MOMENTUM));
+        }
+        return arr.sub(moving_mean).div(moving_var.add(LAYERNORM_EPSILON).sqrt()).mul(gamma.getArray())
                 .add(beta.getArray());
     }
 
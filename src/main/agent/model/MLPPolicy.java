@@ -0,0 +1,219 @@
+package main.agent.model;
+
+import java.util.Random;
+
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.nn.Parameter;
+import ai.djl.util.Pair;
+import ai.djl.util.PairList;
+import main.utils.ActionSampler;
+
+/**
+ * Copy of the weights of a trained {@link ScoreModel} or
+ * {@link DistributionValueModel}, evaluated on primitive arrays without the
+ * engine. A decision takes two small matrix-vector products on the calling
+ * thread and allocates nothing, which suits low-latency serving of a single
+ * state at a time. An instance reuses its buffers, so each thread should
+ * evaluate its own {@link #copy()}.
+ */
+public final class MLPPolicy {
+    private final int input_size;
+    private final int hidden_size;
+    private final int output_size;
+    private final int num_of_action_bins;
+
+    private final float[] input_weight;
+    private final float[] input_bias;
+    private final float[] output_weight;
+    private final float[] output_bias;
+    private final float[] value_weight;
+    private final float value_bias;
+
+    private final boolean is_distribution;
+    private final float normalize_mean;
+    private final float normalize_scale;
+    private final float normalize_shift;
+
+    private final float[] hidden;
+    private final float[] output;
+    private final float[] scores;
+    private float value;
+
+    private MLPPolicy(float[] input_weight, float[] input_bias, float[] output_weight, float[] output_bias,
+            float[] value_weight, float value_bias, int num_of_action_bins, boolean is_distribution,
+            float normalize_mean, float normalize_scale, float normalize_shift) {
+        this.hidden_size = input_bias.length;
+        this.input_size = input_weight.length / hidden_size;
+        this.output_size = output_bias.length;
+        this.num_of_action_bins = num_of_action_bins;
+
+        this.input_weight = input_weight;
+        this.input_bias = input_bias;
+        this.output_weight = output_weight;
+        this.output_bias = output_bias;
+        this.value_weight = value_weight;
+        this.value_bias = value_bias;
+
+        this.is_distribution = is_distribution;
+        this.normalize_mean = normalize_mean;
+        this.normalize_scale = normalize_scale;
+        this.normalize_shift = normalize_shift;
+
+        this.hidden = new float[hidden_size];
+        this.output = new float[output_size];
+        this.scores = new float[output_size / num_of_action_bins];
+    }
+
+    /**
+     * Export the scores of the actions computed by a {@link ScoreModel}.
+     * 
+     * @param model
+     * @param num_of_action_bins number of consecutive outputs averaged into the
+     *                           score of an action, e.g. the quantiles of
+     *                           QRDQN, or 1
+     * @return policy
+     */
+    static MLPPolicy ofScores(Model model, int num_of_action_bins) {
+        PairList<String, Parameter> parameters = model.getBlock().getParameters();
+        return new MLPPolicy(find(parameters, "linear_input_weight"), find(parameters, "linear_input_bias"),
+                find(parameters, "linear_output_weight"), find(parameters, "linear_output_bias"), null, 0.0f,
+                num_of_action_bins, false, 0.0f, 1.0f, 0.0f);
+    }
+
+    /**
+     * Export the distribution and the value computed by a
+     * {@link DistributionValueModel}, whose normalization of the scores is
+     * frozen with the given statistics.
+     * 
+     * @param model
+     * @param mean     of the scores
+     * @param variance of the scores
+     * @param epsilon  added to the variance
+     * @return policy
+     */
+    static MLPPolicy ofDistribution(Model model, float mean, float variance, float epsilon) {
+        PairList<String, Parameter> parameters = model.getBlock().getParameters();
+        float gamma = find(parameters, "mu")[0];
+        float beta = find(parameters, "sigma")[0];
+        return new MLPPolicy(find(parameters, "linear_input_weight"), find(parameters, "linear_input_bias"),
+                find(parameters, "linear_action_weight"), find(parameters, "linear_action_bias"),
+                find(parameters, "linear_value_weight"), find(parameters, "linear_value_bias")[0], 1, true, mean,
+                (float) (gamma / Math.sqrt(variance + epsilon)), beta);
+    }
+
+    /**
+     * Create a policy sharing the weights but not the buffers, e.g. for
+     * another thread.
+     * 
+     * @return policy
+     */
+    public MLPPolicy copy() {
+        return new MLPPolicy(input_weight, input_bias, output_weight, output_bias, value_weight, value_bias,
+                num_of_action_bins, is_distribution, normalize_mean, normalize_scale, normalize_shift);
+    }
+
+    /**
+     * Evaluate the model on a state.
+     * 
+     * @param state
+     * @return scores of the actions, or their distribution for a
+     *         {@link DistributionValueModel}; the buffer is overwritten by the
+     *         next call
+     */
+    public float[] forward(float[] state) {
+        if (state.length != input_size) {
+            throw new IllegalArgumentException("Expected state of dimension " + input_size);
+        }
+
+        for (int i = 0; i < hidden_size; i++) {
+            float sum = input_bias[i];
+            int offset = i * input_size;
+            for (int j = 0; j < input_size; j++) {
+                sum += input_weight[offset + j] * state[j];
+            }
+            hidden[i] = sum > 0.0f ? sum : 0.0f;
+        }
+
+        for (int i = 0; i < output_size; i++) {
+            float sum = output_bias[i];
+            int offset = i * hidden_size;
+            for (int j = 0; j < hidden_size; j++) {
+                sum += output_weight[offset + j] * hidden[j];
+            }
+            output[i] = sum;
+        }
+
+        if (is_distribution) {
+            softmax();
+            float sum = value_bias;
+            for (int j = 0; j < hidden_size; j++) {
+                sum += value_weight[j] * hidden[j];
+            }
+            value = sum;
+        } else {
+            for (int i = 0; i < scores.length; i++) {
+                float sum = 0.0f;
+                for (int j = 0; j < num_of_action_bins; j++) {
+                    sum += output[i * num_of_action_bins + j];
+                }
+                scores[i] = sum / num_of_action_bins;
+            }
+        }
+
+        return scores;
+    }
+
+    /**
+     * Return the value of the state of the last {@link #forward(float[])} of a
+     * {@link DistributionValueModel}.
+     * 
+     * @return value
+     */
+    public float getValue() {
+        return value;
+    }
+
+    public int getNumOfActions() {
+        return scores.length;
+    }
+
+    public int greedy(float[] state) {
+        return ActionSampler.greedy(forward(state));
+    }
+
+    public int epsilonGreedy(float[] state, Random random, float epsilon) {
+        return ActionSampler.epsilonGreedy(forward(state), random, epsilon);
+    }
+
+    public int sampleMultinomial(float[] state, Random random) {
+        return ActionSampler.sampleMultinomial(forward(state), random);
+    }
+
+    private void softmax() {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < output_size; i++) {
+            output[i] = (output[i] - normalize_mean) * normalize_scale + normalize_shift;
+            max = Math.max(max, output[i]);
+        }
+
+        float sum = 0.0f;
+        for (int i = 0; i < output_size; i++) {
+            scores[i] = (float) Math.exp(output[i] - max);
+            sum += scores[i];
+        }
+        for (int i = 0; i < output_size; i++) {
+            scores[i] /= sum;
+        }
+    }
+
+    private static float[] find(PairList<String, Parameter> parameters, String suffix) {
+        for (Pair<String, Parameter> params : parameters) {
+            if (params.getKey().endsWith(suffix)) {
+                NDArray params_arr = params.getValue().getArray();
+                return params_arr.toFloatArray();
+            }
+        }
+        throw new IllegalArgumentException("Missing parameter " + suffix);
+    }
+}
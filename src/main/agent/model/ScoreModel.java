@@ -37,6 +37,29 @@ public class ScoreModel extends BaseModel {
         return model;
     }
 
+    /**
+     * Copy the weights of the model into a {@link MLPPolicy}.
+     * 
+     * @param model created by {@link #newModel(NDManager, int, int, int)}
+     * @return policy
+     */
+    public static MLPPolicy export(Model model) {
+        return export(model, 1);
+    }
+
+    /**
+     * Copy the weights of the model into a {@link MLPPolicy} averaging the
+     * outputs of each action.
+     * 
+     * @param model              created by
+     *                           {@link #newModel(NDManager, int, int, int)}
+     * @param num_of_action_bins number of outputs per action
+     * @return policy
+     */
+    public static MLPPolicy export(Model model, int num_of_action_bins) {
+        return MLPPolicy.ofScores(model, num_of_action_bins);
+    }
+
     @Override
     public NDList forward(ParameterStore parameter_store, NDList inputs, boolean training,
             PairList<String, Object> params) {
@@ -0,0 +1,91 @@
+package main.env;
+
+import main.utils.datatype.VectorSnapshot;
+
+/**
+ * A batch of environments stepped together, so that an agent can react to all
+ * of them with a single forward pass. An environment that terminates is reset
+ * immediately: its reward and mask refer to the last step, while its state is
+ * the initial state of the next episode. The batch is either backed by local
+ * {@link Environment} instances, see {@link VectorEnvironment}, or by remote
+ * instances, see {@link main.env.http.HttpVectorEnvironment}.
+ */
+public abstract class BaseVectorEnvironment {
+    private final int dim_of_state_space;
+    private final int num_of_actions;
+    private final VectorSnapshot snapshot;
+
+    protected BaseVectorEnvironment(int num_of_envs, int dim_of_state_space, int num_of_actions) {
+        this(new float[num_of_envs][dim_of_state_space], dim_of_state_space, num_of_actions);
+    }
+
+    /**
+     * Create a batch of environments writing their states into the given arrays.
+     * 
+     * @param states             one array per environment
+     * @param dim_of_state_space
+     * @param num_of_actions
+     */
+    protected BaseVectorEnvironment(float[][] states, int dim_of_state_space, int num_of_actions) {
+        if (states.length == 0) {
+            throw new IllegalArgumentException("No environment");
+        }
+        this.dim_of_state_space = dim_of_state_space;
+        this.num_of_actions = num_of_actions;
+        this.snapshot = new VectorSnapshot(states, new float[states.length], new boolean[states.length]);
+    }
+
+    /**
+     * Seed the i-th environment with seed + i.
+     * 
+     * @param seed
+     */
+    public abstract void seed(long seed);
+
+    /**
+     * Render the first environment, if it has a visualizer.
+     */
+    public abstract void render();
+
+    /**
+     * Reset all the environments.
+     * 
+     * @return snapshot, overwritten by the next call
+     */
+    public abstract VectorSnapshot reset();
+
+    /**
+     * Take one action in each environment, and reset the ones which terminate.
+     * 
+     * @param actions
+     * @return snapshot, overwritten by the next call
+     */
+    public abstract VectorSnapshot step(int[] actions);
+
+    /**
+     * Return the number of environments.
+     * 
+     * @return number of environments
+     */
+    public final int size() {
+        return snapshot.getStates().length;
+    }
+
+    public final int DimOfStateSpace() {
+        return dim_of_state_space;
+    }
+
+    public final int NumOfActions() {
+        return num_of_actions;
+    }
+
+    /**
+     * Get the snapshot returned by {@link #reset()} and {@link #step(int[])},
+     * whose arrays are overwritten in place.
+     * 
+     * @return snapshot
+     */
+    protected final VectorSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Map;
 import java.util.Random;
 
 import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
 
 public abstract class Environment {
     protected final Random random = new Random(0);
@@ -104,4 +105,26 @@ public abstract class Environment {
      */
     public abstract Snapshot step(int action);
 
+    /**
+     * Reset the environment and write the result into the given holder. The
+     * default implementation copies the result of {@link #reset()}.
+     * 
+     * @param result to be overwritten
+     */
+    public void reset(StepResult result) {
+        result.set(reset());
+    }
+
+    /**
+     * Take the action and write the result into the given holder, which avoids
+     * allocating a new snapshot per step. The default implementation copies
+     * the result of {@link #step(int)}.
+     * 
+     * @param action
+     * @param result to be overwritten
+     */
+    public void step(int action, StepResult result) {
+        result.set(step(action));
+    }
+
 }
@@ -0,0 +1,115 @@
+package main.env;
+
+import java.util.function.Supplier;
+
+import main.utils.datatype.StepResult;
+import main.utils.datatype.VectorSnapshot;
+
+/**
+ * A batch of local {@link Environment} instances. The states of the snapshot
+ * are the arrays the environments write their results into in place, so stepping copies nothing
+ * but the rewards and the masks.
+ */
+public final class VectorEnvironment extends BaseVectorEnvironment {
+    private final Environment[] envs;
+    private final StepResult[] results;
+
+    public VectorEnvironment(Environment... envs) {
+        this(envs.clone(), newResults(envs));
+    }
+
+    private VectorEnvironment(Environment[] envs, StepResult[] results) {
+        super(getStates(results), envs[0].DimOfStateSpace(), envs[0].NumOfActions());
+        this.envs = envs;
+        this.results = results;
+    }
+
+    /**
+     * Create a batch of environments from a factory.
+     * 
+     * @param num_of_envs
+     * @param factory
+     * @return vector environment
+     */
+    public static VectorEnvironment make(int num_of_envs, Supplier<Environment> factory) {
+        Environment[] envs = new Environment[num_of_envs];
+        for (int i = 0; i < num_of_envs; i++) {
+            envs[i] = factory.get();
+        }
+        return new VectorEnvironment(envs);
+    }
+
+    @Override
+    public void seed(long seed) {
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].seed(seed + i);
+        }
+    }
+
+    @Override
+    public void render() {
+        envs[0].render();
+    }
+
+    @Override
+    public VectorSnapshot reset() {
+        VectorSnapshot snapshot = getSnapshot();
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].reset(results[i]);
+            snapshot.getRewards()[i] = results[i].getReward();
+            snapshot.getMasks()[i] = false;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public VectorSnapshot step(int[] actions) {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException("Expected " + envs.length + " actions");
+        }
+        VectorSnapshot snapshot = getSnapshot();
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].step(actions[i], results[i]);
+            snapshot.getRewards()[i] = results[i].getReward();
+            snapshot.getMasks()[i] = results[i].isMasked();
+            if (results[i].isMasked()) {
+                envs[i].reset(results[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    public Environment getEnvironment(int index) {
+        return envs[index];
+    }
+
+    /**
+     * Create an empty result per environment, checking that the environments
+     * share their state and action spaces.
+     * 
+     * @param envs
+     * @return results
+     */
+    private static StepResult[] newResults(Environment[] envs) {
+        if (envs.length == 0) {
+            throw new IllegalArgumentException("No environment");
+        }
+        StepResult[] results = new StepResult[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            if (envs[i].DimOfStateSpace() != envs[0].DimOfStateSpace()
+                    || envs[i].NumOfActions() != envs[0].NumOfActions()) {
+                throw new IllegalArgumentException("Environments have different state or action spaces");
+            }
+            results[i] = new StepResult(envs[i].DimOfStateSpace());
+        }
+        return results;
+    }
+
+    private static float[][] getStates(StepResult[] results) {
+        float[][] states = new float[results.length][];
+        for (int i = 0; i < results.length; i++) {
+            states[i] = results[i].getState();
+        }
+        return states;
+    }
+}
@@ -2,6 +2,7 @@ package main.env.cartpole;
 
 import main.env.Environment;
 import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
 
 /** Exactly the same environment as CartPole-v1 implemented in gym. */
 public final class CartPole extends Environment {
@@ -36,14 +37,33 @@ public final class CartPole extends Environment {
     }
 
     public Snapshot reset() {
+        initialize();
+        return new Snapshot(state, 1.0f, false);
+    }
+
+    @Override
+    public void reset(StepResult result) {
+        initialize();
+        result.set(state, 1.0f, false);
+    }
+
+    public Snapshot step(int action) {
+        return new Snapshot(state, 1.0f, advance(action));
+    }
+
+    @Override
+    public void step(int action, StepResult result) {
+        result.set(state, 1.0f, advance(action));
+    }
+
+    private void initialize() {
         for (int i = 0; i < 4; i++) {
             state[i] = random.nextFloat() * 0.1f - 0.05f;
         }
         count = 0;
-        return new Snapshot(state, 1.0f, false);
     }
 
-    public Snapshot step(int action) {
+    private boolean advance(int action) {
 
         double force = action == 1 ? FORCE_MAG : -FORCE_MAG;
         double cos_theta = Math.cos(state[2]);
@@ -66,7 +86,7 @@ public final class CartPole extends Environment {
         boolean done = (state[0] < -X_THRESHOLD || state[0] > X_THRESHOLD || state[2] < -THETA_THRESHOLD
                 || state[2] > THETA_THRESHOLD);
 
-        return new Snapshot(state, 1.0f, count++ > 500 || done);
+        return count++ > 500 || done;
     }
 
 }
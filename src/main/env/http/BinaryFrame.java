@@ -0,0 +1,45 @@
+package main.env.http;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec of the frames of {@link WireProtocol#BINARY}. Buffers are expected to
+ * be in little-endian order.
+ */
+final class BinaryFrame {
+    private BinaryFrame() {
+    }
+
+    static int size(int dim_of_state) {
+        return Float.BYTES * (dim_of_state + 1) + 1;
+    }
+
+    static void write(ByteBuffer buffer, float[] state, float reward, boolean mask) {
+        for (float value : state) {
+            buffer.putFloat(value);
+        }
+        buffer.putFloat(reward);
+        buffer.put((byte) (mask ? 1 : 0));
+    }
+
+    /**
+     * Decode the state of the frame starting at the offset into the given array.
+     * 
+     * @param buffer
+     * @param offset
+     * @param state
+     */
+    static void readState(ByteBuffer buffer, int offset, float[] state) {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = buffer.getFloat(offset + i * Float.BYTES);
+        }
+    }
+
+    static float readReward(ByteBuffer buffer, int offset, int dim_of_state) {
+        return buffer.getFloat(offset + dim_of_state * Float.BYTES);
+    }
+
+    static boolean readMask(ByteBuffer buffer, int offset, int dim_of_state) {
+        return buffer.get(offset + (dim_of_state + 1) * Float.BYTES) != 0;
+    }
+}
@@ -0,0 +1,287 @@
+package main.env.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import main.env.Environment;
+import main.utils.datatype.StepResult;
+
+/**
+ * Reference server of the protocol of {@link HttpEnvironment} and
+ * {@link HttpVectorEnvironment}, hosting local environments on the loopback
+ * interface. It allows to test and benchmark the clients without a remote
+ * simulator. Both {@link WireProtocol}s are supported; snapshots are encoded
+ * in binary if the request accepts application/octet-stream.
+ */
+public final class EnvironmentServer implements AutoCloseable {
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Environment[] envs;
+    private final StepResult[] results;
+
+    private EnvironmentServer(HttpServer server, ExecutorService executor, Environment[] envs) {
+        this.server = server;
+        this.executor = executor;
+        this.envs = envs;
+        this.results = new StepResult[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            results[i] = new StepResult(envs[i].DimOfStateSpace());
+        }
+    }
+
+    /**
+     * Start a server on the given port.
+     * 
+     * @param port             or 0 to pick a free port
+     * @param num_of_instances
+     * @param factory          creates the hosted environments
+     * @param num_of_threads   number of threads handling the requests
+     * @return server
+     * @throws IOException
+     */
+    public static EnvironmentServer start(int port, int num_of_instances, Supplier<Environment> factory,
+            int num_of_threads) throws IOException {
+        Environment[] envs = new Environment[num_of_instances];
+        for (int i = 0; i < num_of_instances; i++) {
+            envs[i] = factory.get();
+        }
+
+        // The headers and the body of a response are written separately, so that
+        // with Nagle's algorithm the body waits for the delayed acknowledgment of
+        // the headers, about 40 ms per request. The property is read once, when
+        // the first server of the JVM is created.
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(num_of_threads, runnable -> {
+            Thread thread = new Thread(runnable, "environment-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        EnvironmentServer environment_server = new EnvironmentServer(server, executor, envs);
+
+        server.createContext("/", environment_server::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        return environment_server;
+    }
+
+    /**
+     * Return the address to be passed to the clients.
+     * 
+     * @return address
+     */
+    public String getAddress() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean binary = accept != null && accept.contains(WireProtocol.OCTET_STREAM);
+        byte[] response;
+        String content_type;
+        int status = 200;
+        try (InputStream body = exchange.getRequestBody()) {
+            Map<String, String> form = parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            binary &= isSnapshotRequest(form);
+            response = respond(form, binary);
+            content_type = binary ? WireProtocol.OCTET_STREAM : "application/json";
+        } catch (RuntimeException e) {
+            response = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+            content_type = "text/plain";
+            status = 400;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", content_type);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(response);
+        }
+    }
+
+    private static boolean isSnapshotRequest(Map<String, String> form) {
+        return form.containsKey("action") || form.containsKey("actions") || "reset".equals(form.get("env"))
+                || "reset_all".equals(form.get("env"));
+    }
+
+    private byte[] respond(Map<String, String> form, boolean binary) throws IOException {
+        int instance = form.containsKey("instance") ? Integer.parseInt(form.get("instance")) : 0;
+
+        if (form.containsKey("action")) {
+            return step(instance, Integer.parseInt(form.get("action")), binary);
+        } else if (form.containsKey("actions")) {
+            return stepAll(form.get("actions").split(","), binary);
+        } else if (form.containsKey("seed")) {
+            synchronized (envs[instance]) {
+                envs[instance].seed(Long.parseLong(form.get("seed")));
+            }
+            return HttpEnvironment.MAPPER.writeValueAsBytes(Map.of());
+        } else if (form.containsKey("seed_all")) {
+            long seed = Long.parseLong(form.get("seed_all"));
+            for (int i = 0; i < envs.length; i++) {
+                synchronized (envs[i]) {
+                    envs[i].seed(seed + i);
+                }
+            }
+            return HttpEnvironment.MAPPER.writeValueAsBytes(Map.of());
+        }
+
+        switch (String.valueOf(form.get("env"))) {
+        case "query":
+            return query();
+        case "reset":
+            return reset(instance, binary);
+        case "reset_all":
+            return resetAll(binary);
+        default:
+            throw new IllegalArgumentException("Unknown request " + form);
+        }
+    }
+
+    private byte[] query() throws IOException {
+        Environment env = envs[0];
+        List<List<Double>> state_space = new ArrayList<>();
+        for (int i = 0; i < env.DimOfStateSpace(); i++) {
+            double[] range;
+            try {
+                range = env.getStateSpace(i);
+            } catch (UnsupportedOperationException e) {
+                range = new double[] { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY };
+            }
+            List<Double> bounds = new ArrayList<>();
+            for (double bound : range) {
+                bounds.add(Double.isInfinite(bound) ? null : bound);
+            }
+            state_space.add(bounds);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("state_space", state_space);
+        data.put("dim_of_state_space", env.DimOfStateSpace());
+        data.put("num_of_actions", env.NumOfActions());
+        data.put("num_of_instances", envs.length);
+        data.put("protocols", List.of(WireProtocol.JSON.getName(), WireProtocol.BINARY.getName()));
+        return HttpEnvironment.MAPPER.writeValueAsBytes(data);
+    }
+
+    private byte[] reset(int instance, boolean binary) throws IOException {
+        synchronized (envs[instance]) {
+            envs[instance].reset(results[instance]);
+            return encode(results[instance], binary);
+        }
+    }
+
+    private byte[] step(int instance, int action, boolean binary) throws IOException {
+        synchronized (envs[instance]) {
+            envs[instance].step(action, results[instance]);
+            return encode(results[instance], binary);
+        }
+    }
+
+    private byte[] resetAll(boolean binary) throws IOException {
+        float[][] states = new float[envs.length][];
+        float[] rewards = new float[envs.length];
+        boolean[] masks = new boolean[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            synchronized (envs[i]) {
+                envs[i].reset(results[i]);
+                states[i] = results[i].getState().clone();
+                rewards[i] = results[i].getReward();
+            }
+        }
+        return encode(states, rewards, masks, binary);
+    }
+
+    private byte[] stepAll(String[] actions, boolean binary) throws IOException {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException("Expected " + envs.length + " actions");
+        }
+        float[][] states = new float[envs.length][];
+        float[] rewards = new float[envs.length];
+        boolean[] masks = new boolean[envs.length];
+        for (int i = 0; i < envs.length; i++) {
+            synchronized (envs[i]) {
+                envs[i].step(Integer.parseInt(actions[i]), results[i]);
+                rewards[i] = results[i].getReward();
+                masks[i] = results[i].isMasked();
+                if (masks[i]) {
+                    envs[i].reset(results[i]);
+                }
+                states[i] = results[i].getState().clone();
+            }
+        }
+        return encode(states, rewards, masks, binary);
+    }
+
+    private static byte[] encode(StepResult result, boolean binary) throws IOException {
+        if (binary) {
+            ByteBuffer buffer = ByteBuffer.allocate(BinaryFrame.size(result.getState().length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            BinaryFrame.write(buffer, result.getState(), result.getReward(), result.isMasked());
+            return buffer.array();
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("state", result.getState());
+        data.put("reward", result.getReward());
+        data.put("mask", result.isMasked());
+        return HttpEnvironment.MAPPER.writeValueAsBytes(data);
+    }
+
+    private static byte[] encode(float[][] states, float[] rewards, boolean[] masks, boolean binary)
+            throws IOException {
+        if (binary) {
+            int frame_size = BinaryFrame.size(states[0].length);
+            ByteBuffer buffer = ByteBuffer.allocate(states.length * frame_size).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < states.length; i++) {
+                BinaryFrame.write(buffer, states[i], rewards[i], masks[i]);
+            }
+            return buffer.array();
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("states", states);
+        data.put("rewards", rewards);
+        data.put("masks", masks);
+        return HttpEnvironment.MAPPER.writeValueAsBytes(data);
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+}
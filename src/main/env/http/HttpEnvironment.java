@@ -1,42 +1,93 @@
 package main.env.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.http.Consts;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
 import main.env.Environment;
 import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
 
 /**
  * The class provides a client to send actions via post requests and receive
  * snapshots from an external http server. Expected post requests including
  * {"env": "query"}, {"env": "reset"}, {"seed": seed}, and "{"action": action}.
  * A valid server should response with {"state": state as a list of floats,
- * "rewards": float rewards, "mask": boolean mask}.
+ * "rewards": float rewards, "mask": boolean mask}. A server hosting several
+ * instances of the environment selects one with an additional {"instance":
+ * index}, and may step all of them at once, see {@link HttpVectorEnvironment}.
+ * All the clients share a pool of keep-alive connections, and the bodies of
+ * the action requests are encoded once. If the server supports it, responses
+ * are exchanged with {@link WireProtocol#BINARY} and decoded into a reused
+ * buffer.
  */
 public class HttpEnvironment extends Environment {
-    private final HttpClient client;
+    private static final int MAX_CONNECTIONS = 64;
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    static final ObjectReader READER = MAPPER.reader();
+    static final CloseableHttpClient CLIENT;
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(MAX_CONNECTIONS);
+        connections.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        CLIENT = HttpClients.custom().setConnectionManager(connections).build();
+
+        AtomicInteger count = new AtomicInteger();
+        EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "http-environment-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     private final String address;
+    private final int instance;
+    private final byte[][] action_requests;
+    private final byte[] reset_request;
+    private final WireProtocol protocol;
+    private final ByteBuffer frame;
 
-    private HttpEnvironment(double[][] state_space, int dim_of_state_space, int num_of_actions, HttpClient client,
-            String address) {
+    private HttpEnvironment(double[][] state_space, int dim_of_state_space, int num_of_actions, String address,
+            int instance, WireProtocol protocol) {
         super(state_space, dim_of_state_space, num_of_actions);
-        this.client = client;
         this.address = address;
+        this.instance = instance;
+        this.protocol = protocol;
+        this.frame = ByteBuffer.allocate(BinaryFrame.size(dim_of_state_space)).order(ByteOrder.LITTLE_ENDIAN);
+
+        this.action_requests = new byte[num_of_actions][];
+        for (int i = 0; i < num_of_actions; i++) {
+            action_requests[i] = encode(withInstance(Map.of("action", i)));
+        }
+        this.reset_request = encode(withInstance(Map.of("env", "reset")));
     }
 
     /**
@@ -46,51 +97,41 @@ public class HttpEnvironment extends Environment {
      * @return http environment
      */
     public static HttpEnvironment make(String address) {
-        HttpClient client = HttpClients.createDefault();
-        JsonNode data = sendRequest(Map.of("env", "query"), address, client);
-        ArrayNode space = (ArrayNode) data.get("state_space");
-        int dim = data.get("dim_of_state_space").intValue();
-
-        double[][] state_space = new double[dim][2];
-
-        for (int i = 0; i < dim; i++) {
-            for (int j = 0; j < 2; j++) {
-                JsonNode node = space.get(i).get(j);
-                state_space[i][j] = node.isNull() ? (j == 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY)
-                        : node.doubleValue();
-            }
-        }
+        return make(address, -1);
+    }
 
-        return new HttpEnvironment(state_space, dim, data.get("num_of_actions").intValue(), client, address);
+    /**
+     * Create a http environment to interact with one instance hosted at the
+     * specified address.
+     * 
+     * @param address
+     * @param instance index of the instance, or -1 if the server hosts a single
+     *                 one
+     * @return http environment
+     */
+    public static HttpEnvironment make(String address, int instance) {
+        return make(address, instance, WireProtocol.BINARY);
     }
 
     /**
-     * Send prepare and send post requests to the address and handle responses.
+     * Create a http environment to interact with one instance hosted at the
+     * specified address, using the preferred protocol if the server supports
+     * it, and json otherwise.
      * 
-     * @param data
      * @param address
-     * @param client
-     * @return parsed json data
+     * @param instance  index of the instance, or -1 if the server hosts a single
+     *                  one
+     * @param preferred
+     * @return http environment
      */
-    private static JsonNode sendRequest(Map<String, Object> data, String address, HttpClient client) {
-        try {
-            HttpPost post = new HttpPost(address);
-            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(data.entrySet().stream()
-                    .map(entry -> new BasicNameValuePair(entry.getKey(), String.valueOf(entry.getValue())))
-                    .collect(Collectors.toList()), Consts.UTF_8);
-            post.setEntity(entity);
-
-            HttpResponse response = client.execute(post);
-            int status = response.getStatusLine().getStatusCode();
+    public static HttpEnvironment make(String address, int instance, WireProtocol preferred) {
+        JsonNode data = query(address);
+        return new HttpEnvironment(parseStateSpace(data), data.get("dim_of_state_space").intValue(),
+                data.get("num_of_actions").intValue(), address, instance, negotiate(data, preferred));
+    }
 
-            if (status >= 200 && status < 300) {
-                return new ObjectMapper().readTree(EntityUtils.toString(response.getEntity()));
-            } else {
-                throw new IOException("Unexpected response status: " + status);
-            }
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+    public WireProtocol getProtocol() {
+        return protocol;
     }
 
     /**
@@ -108,7 +149,7 @@ public class HttpEnvironment extends Environment {
      */
     @Override
     public void seed(long seed) {
-        sendRequest(Map.of("seed", seed), address, client);
+        sendRequest(encode(withInstance(Map.of("seed", seed))), address);
     }
 
     /**
@@ -118,7 +159,9 @@ public class HttpEnvironment extends Environment {
      */
     @Override
     public Snapshot reset() {
-        return toSnapshot(sendRequest(Map.of("env", "reset"), address, client));
+        StepResult result = new StepResult(DimOfStateSpace());
+        reset(result);
+        return result.toSnapshot();
     }
 
     /**
@@ -126,24 +169,202 @@ public class HttpEnvironment extends Environment {
      */
     @Override
     public Snapshot step(int action) {
-        return toSnapshot(sendRequest(Map.of("action", action), address, client));
+        StepResult result = new StepResult(DimOfStateSpace());
+        step(action, result);
+        return result.toSnapshot();
+    }
+
+    @Override
+    public void reset(StepResult result) {
+        send(reset_request, result);
+    }
+
+    @Override
+    public void step(int action, StepResult result) {
+        send(action_requests[action], result);
     }
 
     /**
-     * Convert a valid response to {@link Snapshot}.
+     * Take action without blocking the calling thread. Requests to different
+     * environments are sent concurrently over the connection pool, while an
+     * environment should have at most one pending step.
      * 
-     * @param parsed json data
+     * @param action
      * @return snapshot
      */
-    private Snapshot toSnapshot(JsonNode data) {
+    public CompletableFuture<Snapshot> stepAsync(int action) {
+        return CompletableFuture.supplyAsync(() -> step(action), EXECUTOR);
+    }
+
+    /**
+     * Take action without blocking the calling thread and write the result into
+     * the given holder.
+     * 
+     * @param action
+     * @param result to be overwritten once the future completes
+     * @return future completed with the holder
+     */
+    public CompletableFuture<StepResult> stepAsync(int action, StepResult result) {
+        return CompletableFuture.supplyAsync(() -> {
+            step(action, result);
+            return result;
+        }, EXECUTOR);
+    }
+
+    static JsonNode query(String address) {
+        return sendRequest(encode(Map.of("env", "query")), address);
+    }
+
+    /**
+     * Choose the protocol from the answer of the server to the query.
+     * 
+     * @param data      answer to {"env": "query"}
+     * @param preferred
+     * @return preferred protocol if listed in "protocols", json otherwise
+     */
+    static WireProtocol negotiate(JsonNode data, WireProtocol preferred) {
+        if (preferred != WireProtocol.JSON && data.has("protocols")) {
+            for (JsonNode node : data.get("protocols")) {
+                if (preferred.getName().equals(node.asText())) {
+                    return preferred;
+                }
+            }
+        }
+        return WireProtocol.JSON;
+    }
+
+    static double[][] parseStateSpace(JsonNode data) {
+        ArrayNode space = (ArrayNode) data.get("state_space");
+        int dim = data.get("dim_of_state_space").intValue();
+
+        double[][] state_space = new double[dim][2];
+
+        for (int i = 0; i < dim; i++) {
+            for (int j = 0; j < 2; j++) {
+                JsonNode node = space.get(i).get(j);
+                state_space[i][j] = node.isNull() ? (j == 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY)
+                        : node.doubleValue();
+            }
+        }
+
+        return state_space;
+    }
+
+    /**
+     * Form-encode the data of a request.
+     * 
+     * @param data
+     * @return body of the request
+     */
+    static byte[] encode(Map<String, Object> data) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8)).append('=')
+                    .append(URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8));
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send a post request to the address over the shared connection pool and
+     * parse the response.
+     * 
+     * @param body    form-encoded data
+     * @param address
+     * @return parsed json data
+     */
+    static JsonNode sendRequest(byte[] body, String address) {
+        return execute(body, address, null, READER::readTree);
+    }
+
+    /**
+     * Send a post request to the address over the shared connection pool and
+     * read the binary response into the buffer, whose capacity is the expected
+     * size of the response.
+     * 
+     * @param body    form-encoded data
+     * @param address
+     * @param frame   buffer to be overwritten
+     */
+    static void sendRequest(byte[] body, String address, ByteBuffer frame) {
+        execute(body, address, WireProtocol.OCTET_STREAM, content -> {
+            int size = content.readNBytes(frame.array(), 0, frame.capacity());
+            if (size != frame.capacity() || content.read() != -1) {
+                throw new IOException("Expected a response of " + frame.capacity() + " bytes");
+            }
+            return null;
+        });
+    }
+
+    private static <T> T execute(byte[] body, String address, String accept, ContentReader<T> reader) {
+        HttpPost post = new HttpPost(address);
+        post.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_FORM_URLENCODED));
+        if (accept != null) {
+            post.setHeader("Accept", accept);
+        }
+
+        try (CloseableHttpResponse response = CLIENT.execute(post)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+
+            if (status >= 200 && status < 300) {
+                try (InputStream content = entity.getContent()) {
+                    return reader.read(content);
+                }
+            } else {
+                EntityUtils.consume(entity);
+                throw new IOException("Unexpected response status: " + status);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void send(byte[] body, StepResult result) {
+        if (protocol == WireProtocol.BINARY) {
+            sendRequest(body, address, frame);
+            BinaryFrame.readState(frame, 0, result.getState());
+            result.set(result.getState(), BinaryFrame.readReward(frame, 0, DimOfStateSpace()),
+                    BinaryFrame.readMask(frame, 0, DimOfStateSpace()));
+        } else {
+            toStepResult(sendRequest(body, address), result);
+        }
+    }
+
+    private Map<String, Object> withInstance(Map<String, Object> data) {
+        if (instance < 0) {
+            return data;
+        }
+        Map<String, Object> extended = new LinkedHashMap<>(data);
+        extended.put("instance", instance);
+        return extended;
+    }
+
+    /**
+     * Write a valid response into the holder.
+     * 
+     * @param parsed json data
+     * @param result
+     */
+    private static void toStepResult(JsonNode data, StepResult result) {
         ArrayNode state_node = (ArrayNode) data.get("state");
-        float[] state = new float[state_node.size()];
+        float[] state = result.getState();
+        if (state_node.size() != state.length) {
+            throw new IllegalStateException("Expected state of dimension " + state.length);
+        }
 
         for (int i = 0; i < state.length; i++) {
             state[i] = state_node.get(i).floatValue();
         }
 
-        return new Snapshot(state, data.get("reward").floatValue(), data.get("mask").asBoolean());
+        result.set(state, data.get("reward").floatValue(), data.get("mask").asBoolean());
+    }
+
+    private interface ContentReader<T> {
+        T read(InputStream content) throws IOException;
     }
 
 }
@@ -0,0 +1,154 @@
+package main.env.http;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import main.env.BaseVectorEnvironment;
+import main.utils.datatype.VectorSnapshot;
+
+/**
+ * Client stepping all the instances hosted by an external http server with a
+ * single request per step. In addition to the requests of
+ * {@link HttpEnvironment}, the server should answer {"env": "query"} with
+ * "num_of_instances", and handle {"env": "reset_all"}, {"seed_all": seed},
+ * and {"actions": comma-separated actions, one per instance}. The batch
+ * requests are answered with {"states": list of states, "rewards": list of
+ * rewards, "masks": list of masks}, and terminated instances are reset by the
+ * server as in {@link BaseVectorEnvironment}. With {@link WireProtocol#BINARY},
+ * the frames of the instances are concatenated.
+ */
+public final class HttpVectorEnvironment extends BaseVectorEnvironment {
+    private static final byte[] RESET_REQUEST = HttpEnvironment.encode(Map.of("env", "reset_all"));
+
+    private final String address;
+    private final StringBuilder actions_builder = new StringBuilder();
+    private final WireProtocol protocol;
+    private final ByteBuffer frames;
+
+    private HttpVectorEnvironment(int num_of_envs, int dim_of_state_space, int num_of_actions, String address,
+            WireProtocol protocol) {
+        super(num_of_envs, dim_of_state_space, num_of_actions);
+        this.address = address;
+        this.protocol = protocol;
+        this.frames = ByteBuffer.allocate(num_of_envs * BinaryFrame.size(dim_of_state_space))
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Create a client of all the instances hosted at the specified address.
+     * 
+     * @param address
+     * @return vector environment
+     */
+    public static HttpVectorEnvironment make(String address) {
+        return make(address, WireProtocol.BINARY);
+    }
+
+    /**
+     * Create a client of all the instances hosted at the specified address,
+     * using the preferred protocol if the server supports it, and json
+     * otherwise.
+     * 
+     * @param address
+     * @param preferred
+     * @return vector environment
+     */
+    public static HttpVectorEnvironment make(String address, WireProtocol preferred) {
+        JsonNode data = HttpEnvironment.query(address);
+        if (!data.has("num_of_instances")) {
+            throw new UnsupportedOperationException("Server does not support batch requests");
+        }
+        return new HttpVectorEnvironment(data.get("num_of_instances").intValue(),
+                data.get("dim_of_state_space").intValue(), data.get("num_of_actions").intValue(), address,
+                HttpEnvironment.negotiate(data, preferred));
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Seed the i-th instance with seed + i.
+     * 
+     * @param seed
+     */
+    @Override
+    public void seed(long seed) {
+        HttpEnvironment.sendRequest(HttpEnvironment.encode(Map.of("seed_all", seed)), address);
+    }
+
+    /**
+     * {@link HttpVectorEnvironment} has no default visualizer.
+     */
+    @Override
+    public void render() {
+        // No effect
+    }
+
+    @Override
+    public VectorSnapshot reset() {
+        return send(RESET_REQUEST);
+    }
+
+    @Override
+    public VectorSnapshot step(int[] actions) {
+        if (actions.length != size()) {
+            throw new IllegalArgumentException("Expected " + size() + " actions");
+        }
+
+        actions_builder.setLength(0);
+        actions_builder.append("actions=");
+        for (int i = 0; i < actions.length; i++) {
+            if (i > 0) {
+                actions_builder.append("%2C");
+            }
+            actions_builder.append(actions[i]);
+        }
+
+        return send(actions_builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private VectorSnapshot send(byte[] body) {
+        if (protocol != WireProtocol.BINARY) {
+            return toSnapshot(HttpEnvironment.sendRequest(body, address));
+        }
+
+        HttpEnvironment.sendRequest(body, address, frames);
+        VectorSnapshot snapshot = getSnapshot();
+        int dim = DimOfStateSpace();
+        int frame_size = BinaryFrame.size(dim);
+        for (int i = 0; i < size(); i++) {
+            BinaryFrame.readState(frames, i * frame_size, snapshot.getStates()[i]);
+            snapshot.getRewards()[i] = BinaryFrame.readReward(frames, i * frame_size, dim);
+            snapshot.getMasks()[i] = BinaryFrame.readMask(frames, i * frame_size, dim);
+        }
+        return snapshot;
+    }
+
+    private VectorSnapshot toSnapshot(JsonNode data) {
+        VectorSnapshot snapshot = getSnapshot();
+        ArrayNode states_node = (ArrayNode) data.get("states");
+        ArrayNode rewards_node = (ArrayNode) data.get("rewards");
+        ArrayNode masks_node = (ArrayNode) data.get("masks");
+        if (states_node.size() != size()) {
+            throw new IllegalStateException("Expected " + size() + " instances");
+        }
+
+        for (int i = 0; i < size(); i++) {
+            JsonNode state_node = states_node.get(i);
+            float[] state = snapshot.getStates()[i];
+            for (int j = 0; j < state.length; j++) {
+                state[j] = state_node.get(j).floatValue();
+            }
+            snapshot.getRewards()[i] = rewards_node.get(i).floatValue();
+            snapshot.getMasks()[i] = masks_node.get(i).asBoolean();
+        }
+
+        return snapshot;
+    }
+}
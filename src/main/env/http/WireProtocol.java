@@ -0,0 +1,26 @@
+package main.env.http;
+
+/**
+ * Encoding of the responses of an environment server. The protocol is
+ * negotiated during the {"env": "query"} handshake: servers supporting the
+ * binary encoding list it in "protocols", and the client requests it with the
+ * header "Accept: application/octet-stream".
+ */
+public enum WireProtocol {
+    /**
+     * Json objects, understood by every server.
+     */
+    JSON,
+    /**
+     * One frame per environment: the state as little-endian float32, followed
+     * by the reward as a float32 and the mask as a byte, see
+     * {@link BinaryFrame}.
+     */
+    BINARY;
+
+    static final String OCTET_STREAM = "application/octet-stream";
+
+    String getName() {
+        return name().toLowerCase();
+    }
+}
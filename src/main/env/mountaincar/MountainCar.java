@@ -2,6 +2,7 @@ package main.env.mountaincar;
 
 import main.env.Environment;
 import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
 
 /** Exactly the same environment as MountainCar-v0 implemented in gym. */
 public final class MountainCar extends Environment {
@@ -32,13 +33,31 @@ public final class MountainCar extends Environment {
     }
 
     public Snapshot reset() {
-        state[0] = random.nextFloat() * 0.2f - 0.6f;
-        episode_length = 0;
-
+        initialize();
         return new Snapshot(state, -1.0f, false);
     }
 
+    @Override
+    public void reset(StepResult result) {
+        initialize();
+        result.set(state, -1.0f, false);
+    }
+
     public Snapshot step(int action) {
+        return new Snapshot(state, -1, advance(action));
+    }
+
+    @Override
+    public void step(int action, StepResult result) {
+        result.set(state, -1, advance(action));
+    }
+
+    private void initialize() {
+        state[0] = random.nextFloat() * 0.2f - 0.6f;
+        episode_length = 0;
+    }
+
+    private boolean advance(int action) {
         state[1] += (action - 1) * FORCE - Math.cos(3 * state[0]) * GRAVITY;
         state[1] = Math.min(Math.max(state[1], -MAX_SPEED), MAX_SPEED);
         state[0] += state[1];
@@ -50,10 +69,7 @@ public final class MountainCar extends Environment {
                 state[1] = 0.0f;
             }
         }
-        boolean done = ((state[0] >= GOAL_POSITION && state[1] >= GOAL_VELOCITY)
-                || ++episode_length >= MAX_EPISODE_LENGTH);
-
-        return new Snapshot(state, -1, done);
+        return ((state[0] >= GOAL_POSITION && state[1] >= GOAL_VELOCITY) || ++episode_length >= MAX_EPISODE_LENGTH);
     }
 
 }
@@ -4,6 +4,14 @@ import java.util.Random;
 
 import ai.djl.ndarray.NDArray;
 
+/**
+ * Action selection on the host. The NDArray variants copy the scores or the
+ * distribution with a single {@link NDArray#toFloatArray()}, instead of
+ * reading the entries one by one through the engine, and the batch variants
+ * select one action per row of a (batch size, number of actions) array with a
+ * single copy. The multinomial sampler walks the cumulative sum once, which is
+ * cheaper than building an alias table for a distribution used only once.
+ */
 public final class ActionSampler {
     public static int epsilonGreedy(NDArray distribution, Random random, float epsilon) {
         if (random.nextFloat() < epsilon) {
@@ -15,19 +23,154 @@ public final class ActionSampler {
     }
 
     public static int greedy(NDArray distribution) {
-        return (int) distribution.argMax().getLong();
+        return greedy(distribution.toFloatArray());
+    }
+
+    public static int epsilonGreedy(float[] scores, Random random, float epsilon) {
+        return epsilonGreedy(scores, 0, scores.length, random, epsilon);
+    }
+
+    /**
+     * Return the first action of maximal score, as {@link NDArray#argMax()}.
+     * 
+     * @param scores
+     * @return action
+     */
+    public static int greedy(float[] scores) {
+        return greedy(scores, 0, scores.length);
+    }
+
+    /**
+     * Return an action of maximal score among the scores[offset, offset +
+     * length), chosen uniformly among ties by reservoir sampling. A single pass
+     * draws a random number only when a tie is met, and allocates nothing.
+     * 
+     * @param scores
+     * @param offset of the first score
+     * @param length number of actions
+     * @param random
+     * @return action in [0, length)
+     */
+    public static int randomGreedy(float[] scores, int offset, int length, Random random) {
+        int action = 0;
+        float max = scores[offset];
+        int num_of_ties = 1;
+        for (int i = 1; i < length; i++) {
+            float score = scores[offset + i];
+            if (score > max) {
+                max = score;
+                action = i;
+                num_of_ties = 1;
+            } else if (score == max) {
+                num_of_ties++;
+                if (random.nextInt(num_of_ties) == 0) {
+                    action = i;
+                }
+            }
+        }
+        return action;
+    }
+
+    public static int sampleMultinomial(float[] distribution, Random random) {
+        return sampleMultinomial(distribution, 0, distribution.length, random);
     }
 
     public static int sampleMultinomial(NDArray distribution, Random random) {
-        int value = 0;
-        long size = distribution.size();
+        return sampleMultinomial(distribution.toFloatArray(), random);
+    }
+
+    /**
+     * Select an epsilon-greedy action for each row of the scores.
+     * 
+     * @param scores  of shape (batch size, number of actions)
+     * @param random
+     * @param epsilon
+     * @return actions
+     */
+    public static int[] epsilonGreedyBatch(NDArray scores, Random random, float epsilon) {
+        int num_of_actions = (int) scores.getShape().get(1);
+        float[] values = scores.toFloatArray();
+        int[] actions = new int[values.length / num_of_actions];
+        epsilonGreedyBatch(values, num_of_actions, random, epsilon, actions);
+        return actions;
+    }
+
+    /**
+     * Select an epsilon-greedy action for each row of the scores, drawing the
+     * random numbers in the same order as one call per row.
+     * 
+     * @param scores         row-major, of length batch size * number of
+     *                       actions
+     * @param num_of_actions
+     * @param random
+     * @param epsilon
+     * @param actions        output of length batch size
+     */
+    public static void epsilonGreedyBatch(float[] scores, int num_of_actions, Random random, float epsilon,
+            int[] actions) {
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = epsilonGreedy(scores, i * num_of_actions, num_of_actions, random, epsilon);
+        }
+    }
+
+    /**
+     * Sample an action from each row of the distributions.
+     * 
+     * @param distributions of shape (batch size, number of actions)
+     * @param random
+     * @return actions
+     */
+    public static int[] sampleMultinomialBatch(NDArray distributions, Random random) {
+        int num_of_actions = (int) distributions.getShape().get(1);
+        float[] values = distributions.toFloatArray();
+        int[] actions = new int[values.length / num_of_actions];
+        sampleMultinomialBatch(values, num_of_actions, random, actions);
+        return actions;
+    }
+
+    /**
+     * Sample an action from each row of the distributions, drawing the random
+     * numbers in the same order as one call per row.
+     * 
+     * @param distributions  row-major, of length batch size * number of actions
+     * @param num_of_actions
+     * @param random
+     * @param actions        output of length batch size
+     */
+    public static void sampleMultinomialBatch(float[] distributions, int num_of_actions, Random random,
+            int[] actions) {
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = sampleMultinomial(distributions, i * num_of_actions, num_of_actions, random);
+        }
+    }
+
+    private static int epsilonGreedy(float[] scores, int offset, int length, Random random, float epsilon) {
+        if (random.nextFloat() < epsilon) {
+            return random.nextInt(length);
+
+        } else {
+            return greedy(scores, offset, length);
+        }
+    }
+
+    private static int greedy(float[] scores, int offset, int length) {
+        int action = 0;
+        float max = scores[offset];
+        for (int i = 1; i < length; i++) {
+            if (scores[offset + i] > max) {
+                max = scores[offset + i];
+                action = i;
+            }
+        }
+        return action;
+    }
+
+    private static int sampleMultinomial(float[] distribution, int offset, int length, Random random) {
         float rnd = random.nextFloat();
-        for (int i = 0; i < size; i++) {
-            float cut = distribution.getFloat(value);
-            if (rnd > cut) {
-                value++;
-            } else {
-                return value;
+        for (int i = 0; i < length; i++) {
+            float cut = distribution[offset + i];
+            if (rnd <= cut) {
+                return i;
             }
             rnd -= cut;
         }
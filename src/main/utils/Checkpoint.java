@@ -0,0 +1,557 @@
+package main.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.nn.Parameter;
+import ai.djl.training.optimizer.Adam;
+import ai.djl.training.optimizer.Optimizer;
+import ai.djl.util.Pair;
+import ai.djl.util.PairList;
+
+/**
+ * Binary encoding of the state of the agents. A checkpoint is either streamed
+ * into a temporary file on the calling thread, or serialized on the calling
+ * thread into the heap, except for the parts deferred by the content, e.g. the
+ * replay records, which a single background thread streams into the file in
+ * the order of the calls. The file is then synced to the disk and replaces
+ * the checkpoint by an atomic move, so that a crash never leaves a truncated
+ * checkpoint behind.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x444a4c52;
+    private static final int VERSION = 5;
+
+    private static final byte INT_FIELD = 0;
+    private static final byte COUNT_MAP = 1;
+    private static final byte ARRAY_MAP = 2;
+
+    /**
+     * Private fields holding the state of {@link Adam}, which DJL does not
+     * expose: the number of updates and the update counts per parameter of
+     * {@link Optimizer}, and the moment estimates per parameter and device.
+     */
+    private static final OptimizerState[] ADAM_STATE = {
+            new OptimizerState(Optimizer.class, "numUpdate", INT_FIELD),
+            new OptimizerState(Optimizer.class, "updateCounts", COUNT_MAP),
+            new OptimizerState(Adam.class, "means", ARRAY_MAP),
+            new OptimizerState(Adam.class, "variances", ARRAY_MAP) };
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Write the header identifying the agent.
+     * 
+     * @param output
+     * @param agent_class
+     * @param include_memory
+     * @throws IOException
+     */
+    public static void writeHeader(DataOutputStream output, Class<?> agent_class, boolean include_memory)
+            throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(agent_class.getName());
+        output.writeBoolean(include_memory);
+    }
+
+    /**
+     * Read and validate the header.
+     * 
+     * @param input
+     * @param agent_class expected class of the agent
+     * @return true if the checkpoint includes the replay memory
+     * @throws IOException
+     */
+    public static boolean readHeader(DataInputStream input, Class<?> agent_class) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("Not a checkpoint of version " + VERSION);
+        }
+        String name = input.readUTF();
+        if (!name.equals(agent_class.getName())) {
+            throw new IOException("Checkpoint of " + name + " cannot be loaded into " + agent_class.getName());
+        }
+        return input.readBoolean();
+    }
+
+    /**
+     * Stream the content of a checkpoint into a temporary file next to the
+     * path, without syncing it.
+     * 
+     * @param path    of the checkpoint
+     * @param content
+     * @return temporary file, to be passed to {@link #commit(Path, Path)}
+     * @throws IOException
+     */
+    public static Path writeTemporary(Path path, Content content) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            content.write(output);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Sync the temporary file to the disk and move it to the path, replacing
+     * the file atomically.
+     * 
+     * @param temp as returned by {@link #writeTemporary(Path, Content)}
+     * @param path
+     * @throws IOException
+     */
+    public static void commit(Path temp, Path path) throws IOException {
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Serialize the content into the heap, then write, sync and move the file
+     * on the background thread. The parts deferred with
+     * {@link #defer(DataOutputStream, Deferred)} are written by the background
+     * thread instead.
+     * 
+     * @param path
+     * @param content
+     * @return future completed with the path once the file is replaced, or
+     *         completed exceptionally if the checkpoint cannot be written
+     */
+    public static CompletableFuture<Path> saveAsync(Path path, Content content) {
+        DeferredOutput output = new DeferredOutput();
+        try {
+            content.write(output);
+            output.close();
+        } catch (IOException | RuntimeException e) {
+            output.release();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                commit(writeTemporary(path, output::writeTo), path);
+                return path;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                output.release();
+            }
+        }, WRITER);
+    }
+
+    /**
+     * Check if the output serializes a checkpoint saved by
+     * {@link #saveAsync(Path, Content)}, which accepts deferred parts.
+     * 
+     * @param output
+     * @return true if the parts can be deferred
+     */
+    public static boolean isDeferred(DataOutputStream output) {
+        return output instanceof DeferredOutput;
+    }
+
+    /**
+     * Write a part of the checkpoint later, on the background thread, at the
+     * current position of the output.
+     * 
+     * @param output   for which {@link #isDeferred(DataOutputStream)} holds
+     * @param deferred
+     * @throws IOException
+     */
+    public static void defer(DataOutputStream output, Deferred deferred) throws IOException {
+        ((DeferredOutput) output).defer(deferred);
+    }
+
+    /**
+     * Write the names, shapes and values of the parameters of the model.
+     * 
+     * @param output
+     * @param model
+     * @throws IOException
+     */
+    public static void writeParameters(DataOutputStream output, Model model) throws IOException {
+        PairList<String, Parameter> parameters = model.getBlock().getParameters();
+        output.writeInt(parameters.size());
+        for (Pair<String, Parameter> params : parameters) {
+            output.writeUTF(params.getKey());
+            writeArray(output, params.getValue().getArray());
+        }
+    }
+
+    /**
+     * Overwrite the parameters of the model in place, keeping their gradients
+     * attached.
+     * 
+     * @param input
+     * @param model of the same architecture as the saved one
+     * @throws IOException
+     */
+    public static void readParameters(DataInputStream input, Model model) throws IOException {
+        PairList<String, Parameter> parameters = model.getBlock().getParameters();
+        int num_of_parameters = input.readInt();
+        if (num_of_parameters != parameters.size()) {
+            throw new IOException("Expected " + parameters.size() + " parameters but got " + num_of_parameters);
+        }
+        for (int i = 0; i < num_of_parameters; i++) {
+            String name = input.readUTF();
+            Parameter parameter = parameters.get(name);
+            if (parameter == null) {
+                throw new IOException("Unknown parameter " + name);
+            }
+            NDArray params_arr = parameter.getArray();
+            long[] shape = readShape(input);
+            if (!Arrays.equals(shape, params_arr.getShape().getShape())) {
+                throw new IOException("Unexpected shape of parameter " + name);
+            }
+            params_arr.set(FloatBuffer.wrap(readFloats(input)));
+        }
+    }
+
+    /**
+     * Write the per-parameter state of the optimizer, i.e. the update counts
+     * and the moment estimates of Adam. The state is read reflectively from an
+     * allow-list of fields, checking the type of every value, so that a change
+     * of their layout in DJL fails with an {@link IOException} naming the field.
+     * 
+     * @param output
+     * @param optimizer {@link Adam}
+     * @throws IOException
+     */
+    public static void writeOptimizer(DataOutputStream output, Optimizer optimizer) throws IOException {
+        assertAdam(optimizer);
+        output.writeInt(ADAM_STATE.length);
+        for (OptimizerState state : ADAM_STATE) {
+            output.writeUTF(state.name);
+            output.writeByte(state.kind);
+            Object value = state.get(optimizer);
+            if (state.kind == INT_FIELD) {
+                output.writeInt((Integer) value);
+            } else {
+                writeMap(output, state, value);
+            }
+        }
+    }
+
+    /**
+     * Restore the state of the optimizer. The moment estimates are created on
+     * the managers and the devices of the parameters they belong to.
+     * 
+     * @param input
+     * @param optimizer {@link Adam}
+     * @param model     updated by the optimizer
+     * @throws IOException
+     */
+    public static void readOptimizer(DataInputStream input, Optimizer optimizer, Model model) throws IOException {
+        assertAdam(optimizer);
+        PairList<String, Parameter> parameters = model.getBlock().getParameters();
+        int num_of_fields = input.readInt();
+        for (int i = 0; i < num_of_fields; i++) {
+            String name = input.readUTF();
+            OptimizerState state = Arrays.stream(ADAM_STATE).filter(s -> s.name.equals(name)).findFirst()
+                    .orElseThrow(() -> new IOException("Unknown optimizer state " + name));
+            if (input.readByte() != state.kind) {
+                throw new IOException("Unexpected encoding of optimizer state " + name);
+            }
+            if (state.kind == INT_FIELD) {
+                state.setInt(optimizer, input.readInt());
+            } else {
+                readMap(input, state, state.getMap(optimizer), parameters);
+            }
+        }
+    }
+
+    public static void writeFloats(DataOutputStream output, float[] values) throws IOException {
+        output.writeInt(values.length);
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+        buffer.asFloatBuffer().put(values);
+        output.write(buffer.array());
+    }
+
+    public static float[] readFloats(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt() * Float.BYTES];
+        input.readFully(bytes);
+        float[] values = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    public static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        output.write(buffer.array());
+    }
+
+    public static int[] readInts(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt() * Integer.BYTES];
+        input.readFully(bytes);
+        int[] values = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        return values;
+    }
+
+    public static void writeBooleans(DataOutputStream output, boolean[] values) throws IOException {
+        output.writeInt(values.length);
+        for (boolean value : values) {
+            output.writeBoolean(value);
+        }
+    }
+
+    public static boolean[] readBooleans(DataInputStream input) throws IOException {
+        boolean[] values = new boolean[input.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = input.readBoolean();
+        }
+        return values;
+    }
+
+    private static void writeArray(DataOutputStream output, NDArray arr) throws IOException {
+        long[] shape = arr.getShape().getShape();
+        output.writeInt(shape.length);
+        for (long dim : shape) {
+            output.writeLong(dim);
+        }
+        writeFloats(output, arr.toFloatArray());
+    }
+
+    private static long[] readShape(DataInputStream input) throws IOException {
+        long[] shape = new long[input.readInt()];
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = input.readLong();
+        }
+        return shape;
+    }
+
+    private static void writeMap(DataOutputStream output, OptimizerState state, Object value) throws IOException {
+        Map<?, ?> map = state.cast(value, Map.class);
+        output.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            output.writeUTF(state.cast(entry.getKey(), String.class));
+            if (state.kind == COUNT_MAP) {
+                output.writeInt(state.cast(entry.getValue(), Integer.class));
+            } else {
+                Map<?, ?> arrays = state.cast(entry.getValue(), Map.class);
+                output.writeInt(arrays.size());
+                for (Object arr : arrays.values()) {
+                    writeArray(output, state.cast(arr, NDArray.class));
+                }
+            }
+        }
+    }
+
+    private static void readMap(DataInputStream input, OptimizerState state, Map<Object, Object> map,
+            PairList<String, Parameter> parameters) throws IOException {
+        if (state.kind == ARRAY_MAP) {
+            for (Object value : map.values()) {
+                for (Object arr : state.cast(value, Map.class).values()) {
+                    state.cast(arr, NDArray.class).close();
+                }
+            }
+        }
+        map.clear();
+
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = input.readUTF();
+            if (state.kind == COUNT_MAP) {
+                map.put(key, input.readInt());
+                continue;
+            }
+
+            Parameter parameter = parameters.get(key);
+            if (parameter == null) {
+                throw new IOException("Unknown parameter " + key);
+            }
+            NDArray params_arr = parameter.getArray();
+            Map<Object, Object> arrays = new ConcurrentHashMap<>();
+            int num_of_arrays = input.readInt();
+            for (int j = 0; j < num_of_arrays; j++) {
+                Shape shape = new Shape(readShape(input));
+                arrays.put(params_arr.getDevice(), params_arr.getManager().create(readFloats(input), shape));
+            }
+            map.put(key, arrays);
+        }
+    }
+
+    private static void assertAdam(Optimizer optimizer) throws IOException {
+        if (optimizer.getClass() != Adam.class) {
+            throw new IOException("Unsupported optimizer " + optimizer.getClass().getName());
+        }
+    }
+
+
+    /**
+     * A field of the allow-list, resolved when it is accessed, so that a
+     * missing field or a field of another type is reported by name.
+     */
+    private static final class OptimizerState {
+        private final Class<?> owner;
+        private final String name;
+        private final byte kind;
+
+        private OptimizerState(Class<?> owner, String name, byte kind) {
+            this.owner = owner;
+            this.name = name;
+            this.kind = kind;
+        }
+
+        private Object get(Optimizer optimizer) throws IOException {
+            try {
+                return getField().get(optimizer);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Inaccessible optimizer state " + name, e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<Object, Object> getMap(Optimizer optimizer) throws IOException {
+            return cast(get(optimizer), Map.class);
+        }
+
+        private void setInt(Optimizer optimizer, int value) throws IOException {
+            try {
+                getField().setInt(optimizer, value);
+            } catch (IllegalAccessException e) {
+                throw new IOException("Inaccessible optimizer state " + name, e);
+            }
+        }
+
+        /**
+         * Check the type of a value of the field.
+         * 
+         * @param value
+         * @param type  expected type
+         * @return value
+         * @throws IOException if the value is null or of another type
+         */
+        private <T> T cast(Object value, Class<T> type) throws IOException {
+            if (!type.isInstance(value)) {
+                throw new IOException("Expected " + type.getSimpleName() + " in optimizer state " + name + " but got "
+                        + (value == null ? "null" : value.getClass().getName()));
+            }
+            return type.cast(value);
+        }
+
+        private Field getField() throws IOException {
+            Field field;
+            try {
+                field = owner.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                throw new IOException("Missing optimizer state " + owner.getSimpleName() + "." + name, e);
+            }
+            boolean expected = kind == INT_FIELD ? field.getType() == int.class
+                    : Map.class.isAssignableFrom(field.getType());
+            if (!expected || Modifier.isStatic(field.getModifiers())) {
+                throw new IOException("Unexpected type " + field.getType().getName() + " of optimizer state "
+                        + owner.getSimpleName() + "." + name);
+            }
+            try {
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                throw new IOException("Inaccessible optimizer state " + name, e);
+            }
+            return field;
+        }
+    }
+
+    /**
+     * Content of a checkpoint, written on the calling thread.
+     */
+    public interface Content {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Part of a checkpoint written on the background thread, and released once
+     * the checkpoint is written or has failed, whether or not it was written.
+     */
+    public interface Deferred extends Content {
+        default void release() {
+            // No effect
+        }
+    }
+
+    /**
+     * Output buffering the serialized parts of a checkpoint between the
+     * deferred ones.
+     */
+    private static final class DeferredOutput extends DataOutputStream {
+        private final List<byte[]> segments = new ArrayList<>();
+        private final List<Deferred> deferred = new ArrayList<>();
+
+        private DeferredOutput() {
+            super(new ByteArrayOutputStream());
+        }
+
+        private void defer(Deferred part) throws IOException {
+            cut();
+            deferred.add(part);
+        }
+
+        @Override
+        public void close() throws IOException {
+            cut();
+        }
+
+        private void cut() throws IOException {
+            flush();
+            ByteArrayOutputStream buffer = (ByteArrayOutputStream) out;
+            segments.add(buffer.toByteArray());
+            buffer.reset();
+        }
+
+        private void writeTo(DataOutputStream output) throws IOException {
+            for (int i = 0; i < segments.size(); i++) {
+                output.write(segments.get(i));
+                if (i < deferred.size()) {
+                    deferred.get(i).write(output);
+                }
+            }
+        }
+
+        private void release() {
+            for (Deferred part : deferred) {
+                part.release();
+            }
+        }
+    }
+}
\ No newline at end of file
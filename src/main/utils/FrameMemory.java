@@ -0,0 +1,213 @@
+package main.utils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Replay memory storing every observation once. States live in a ring of
+ * frames, and each transition refers to the frame of its state and to the
+ * frame of its next state, if any. Since the next state of a transition is the
+ * state of the following one within an episode, the two share a frame, so
+ * that a memory filled by {@link #setState(float[])} holds about one frame per
+ * transition instead of two. Frames are released in the order of the
+ * transitions referring to them; if transitions are added with unrelated
+ * states, e.g. interleaved from several environments, the ring grows up to
+ * two frames per transition.
+ */
+public final class FrameMemory extends Memory {
+    private final FrameStorage storage;
+
+    public FrameMemory(int capacity) {
+        this(capacity, 0);
+    }
+
+    public FrameMemory(int capacity, int seed) {
+        this(capacity, seed, new FrameStorage(capacity));
+    }
+
+    private FrameMemory(int capacity, int seed, FrameStorage storage) {
+        super(capacity, seed, storage);
+        this.storage = storage;
+    }
+
+    /**
+     * Return the number of frames currently allocated for the states.
+     * 
+     * @return number of frames
+     */
+    public int getNumOfFrames() {
+        return storage.getNumOfFrames();
+    }
+
+    private static final class FrameStorage implements ReplayStorage {
+        private final int capacity;
+        private final int[] state_frames;
+        private final int[] next_frames;
+        private final int[] actions;
+        private final float[] rewards;
+        private final boolean[] masks;
+
+        private int dim_of_state = -1;
+        private int num_of_frames;
+        private float[] frames;
+        private float[] zeros;
+        private int frame_head;
+        private int last_frame = -1;
+
+        private FrameStorage(int capacity) {
+            this.capacity = capacity;
+            this.state_frames = new int[capacity];
+            this.next_frames = new int[capacity];
+            this.actions = new int[capacity];
+            this.rewards = new float[capacity];
+            this.masks = new boolean[capacity];
+        }
+
+        private int getNumOfFrames() {
+            return num_of_frames;
+        }
+
+        @Override
+        public int getDimOfState() {
+            return dim_of_state;
+        }
+
+        @Override
+        public void allocate(int dim_of_state) {
+            this.dim_of_state = dim_of_state;
+            this.num_of_frames = capacity + 2;
+            this.frames = new float[num_of_frames * dim_of_state];
+            this.zeros = new float[dim_of_state];
+        }
+
+        @Override
+        public void write(int head, int size, float[] state, float[] state_next, int action, float reward,
+                boolean mask) {
+            boolean shared = last_frame >= 0 && Arrays.equals(frames, last_frame * dim_of_state,
+                    (last_frame + 1) * dim_of_state, state, 0, dim_of_state);
+            int required = (shared ? 0 : 1) + (state_next != null ? 1 : 0);
+
+            int oldest_frame = frame_head;
+            if (size > 1) {
+                oldest_frame = state_frames[Math.floorMod(head - size + 1, capacity)];
+            }
+            int in_use = Math.floorMod(frame_head - oldest_frame, num_of_frames);
+            if (in_use + required >= num_of_frames) {
+                grow(head, size, oldest_frame, in_use);
+            }
+
+            int state_frame = shared ? last_frame : store(state);
+            int next_frame = state_next != null ? store(state_next) : -1;
+
+            state_frames[head] = state_frame;
+            next_frames[head] = next_frame;
+            actions[head] = action;
+            rewards[head] = reward;
+            masks[head] = mask;
+            last_frame = next_frame;
+        }
+
+        /**
+         * Copy the state into the next frame of the ring.
+         * 
+         * @param state
+         * @return index of the frame
+         */
+        private int store(float[] state) {
+            int frame = frame_head;
+            System.arraycopy(state, 0, frames, frame * dim_of_state, dim_of_state);
+            frame_head = frame + 1 == num_of_frames ? 0 : frame + 1;
+            return frame;
+        }
+
+        /**
+         * Double the ring, moving the frames in use to its beginning and
+         * renumbering the references of the transitions other than the one
+         * being overwritten at the head.
+         * 
+         * @param head
+         * @param size
+         * @param oldest_frame
+         * @param in_use
+         */
+        private void grow(int head, int size, int oldest_frame, int in_use) {
+            int grown = Math.min(2 * num_of_frames, 2 * capacity + 2);
+            float[] grown_frames = new float[grown * dim_of_state];
+            for (int i = 0; i < in_use; i++) {
+                int frame = (oldest_frame + i) % num_of_frames;
+                System.arraycopy(frames, frame * dim_of_state, grown_frames, i * dim_of_state, dim_of_state);
+            }
+
+            for (int i = 1; i < size; i++) {
+                int index = Math.floorMod(head - i, capacity);
+                state_frames[index] = Math.floorMod(state_frames[index] - oldest_frame, num_of_frames);
+                if (next_frames[index] >= 0) {
+                    next_frames[index] = Math.floorMod(next_frames[index] - oldest_frame, num_of_frames);
+                }
+            }
+            if (last_frame >= 0) {
+                last_frame = Math.floorMod(last_frame - oldest_frame, num_of_frames);
+            }
+
+            frames = grown_frames;
+            frame_head = in_use;
+            num_of_frames = grown;
+        }
+
+        @Override
+        public void clear() {
+            frame_head = 0;
+            last_frame = -1;
+        }
+
+        @Override
+        public int getHead() {
+            return -1;
+        }
+
+        @Override
+        public int getSize() {
+            return 0;
+        }
+
+        @Override
+        public void getState(int index, float[] state) {
+            System.arraycopy(frames, state_frames[index] * dim_of_state, state, 0, dim_of_state);
+        }
+
+        @Override
+        public void getNextState(int index, float[] state_next) {
+            System.arraycopy(frames, next_frames[index] * dim_of_state, state_next, 0, dim_of_state);
+        }
+
+        @Override
+        public void putState(int index, FloatBuffer output) {
+            output.put(frames, state_frames[index] * dim_of_state, dim_of_state);
+        }
+
+        @Override
+        public void putNextState(int index, FloatBuffer output) {
+            int frame = next_frames[index];
+            if (frame >= 0) {
+                output.put(frames, frame * dim_of_state, dim_of_state);
+            } else {
+                output.put(zeros);
+            }
+        }
+
+        @Override
+        public int getAction(int index) {
+            return actions[index];
+        }
+
+        @Override
+        public float getReward(int index) {
+            return rewards[index];
+        }
+
+        @Override
+        public boolean isMasked(int index) {
+            return masks[index];
+        }
+    }
+}
@@ -1,20 +1,32 @@
 package main.utils;
 
 import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
 
 public final class Helper {
     public static NDArray gather(NDArray arr, int[] indexes) {
-        boolean[][] mask = new boolean[(int) arr.size(0)][(int) arr.size(1)];
-        for (int i = 0; i < indexes.length; i++) {
-            mask[i][indexes[i]] = true;
-        }
-        NDArray boolean_mask = arr.getManager().create(mask);
-        for (int i = (int) boolean_mask.getShape().dimension(); i < arr.getShape().dimension(); i++) {
-            boolean_mask = boolean_mask.expandDims(i);
-        }
+        return gather(arr, arr.getManager().create(indexes));
+    }
+
+    /**
+     * Select one entry along the second axis for each row, e.g. the score of the
+     * taken action. The boolean mask (indexes == arange(n)) is built by the
+     * engine, so that no mask is built on the host, and the entries are
+     * selected instead of multiplied, so that an infinite entry elsewhere in the
+     * row, e.g. the log of an underflowed probability, does not turn the result
+     * into NaN. The gradient flows to the selected entries.
+     * 
+     * @param arr     of shape (batch size, n, ...)
+     * @param indexes of shape (batch size), with values in [0, n)
+     * @return of shape (batch size, ...), squeezed
+     */
+    public static NDArray gather(NDArray arr, NDArray indexes) {
+        Shape shape = arr.getShape();
+        NDArray mask = indexes.toType(DataType.INT32, false).reshape(-1, 1)
+                .eq(arr.getManager().arange((int) shape.get(1)));
 
-        return arr.get(tile(boolean_mask, arr.getShape())).reshape(Shape.update(arr.getShape(), 1, 1)).squeeze();
+        return arr.get(tile(mask, shape)).reshape(Shape.update(shape, 1, 1)).squeeze();
     }
 
     public static NDArray tile(NDArray arr, Shape shape) {
@@ -0,0 +1,150 @@
+package main.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Max-priority queue of the keys in [0, capacity), each queued at most once,
+ * as a binary heap over primitive arrays. Offering a queued key keeps the
+ * higher of its two priorities, as in prioritized sweeping. Offering and
+ * polling take O(log size), and clearing takes O(size).
+ */
+public final class IndexedPriorityQueue {
+    private final int[] heap;
+    private final int[] positions;
+    private final float[] priorities;
+    private int size = 0;
+
+    public IndexedPriorityQueue(int capacity) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.priorities = new float[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Queue a key, or raise its priority if it is already queued with a lower
+     * one.
+     * 
+     * @param key
+     * @param priority
+     */
+    public void offer(int key, float priority) {
+        int position = positions[key];
+        if (position < 0) {
+            heap[size] = key;
+            positions[key] = size;
+            priorities[key] = priority;
+            siftUp(size);
+            size++;
+
+        } else if (priority > priorities[key]) {
+            priorities[key] = priority;
+            siftUp(position);
+        }
+    }
+
+    /**
+     * Remove the key of highest priority.
+     * 
+     * @return key
+     */
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("Empty queue");
+        }
+
+        int key = heap[0];
+        positions[key] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        return key;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Write the queued keys in heap order and their priorities.
+     * 
+     * @param output
+     * @throws IOException
+     */
+    public void save(DataOutputStream output) throws IOException {
+        int[] keys = Arrays.copyOf(heap, size);
+        float[] queued_priorities = new float[size];
+        for (int i = 0; i < size; i++) {
+            queued_priorities[i] = priorities[keys[i]];
+        }
+        Checkpoint.writeInts(output, keys);
+        Checkpoint.writeFloats(output, queued_priorities);
+    }
+
+    public void load(DataInputStream input) throws IOException {
+        clear();
+        int[] keys = Checkpoint.readInts(input);
+        float[] queued_priorities = Checkpoint.readFloats(input);
+        for (int i = 0; i < keys.length; i++) {
+            heap[i] = keys[i];
+            positions[keys[i]] = i;
+            priorities[keys[i]] = queued_priorities[i];
+        }
+        size = keys.length;
+    }
+
+    private void siftUp(int position) {
+        int key = heap[position];
+        float priority = priorities[key];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (priorities[heap[parent]] >= priority) {
+                break;
+            }
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(key, position);
+    }
+
+    private void siftDown(int position) {
+        int key = heap[position];
+        float priority = priorities[key];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && priorities[heap[child + 1]] > priorities[heap[child]]) {
+                child++;
+            }
+            if (priority >= priorities[heap[child]]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(key, position);
+    }
+
+    private void move(int key, int position) {
+        heap[position] = key;
+        positions[key] = position;
+    }
+}
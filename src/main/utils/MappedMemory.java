@@ -0,0 +1,377 @@
+package main.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replay memory stored in a memory-mapped file, so that its capacity is
+ * bounded by the disk instead of the heap and its content survives a restart.
+ * Transitions are fixed-width records of state, next state, action, reward,
+ * and mask, mapped in segments of at most 1 GiB. The head and the size are
+ * kept in the header of the file, and every record is journaled there before
+ * it overwrites its slot, so that a crashed process leaves either the previous
+ * or the next consistent memory behind. Reopening the file resumes from it.
+ * Call {@link #flush()} to also survive a crash of the operating system.
+ */
+public final class MappedMemory extends Memory implements AutoCloseable {
+    private final MappedStorage storage;
+
+    private MappedMemory(int capacity, int seed, MappedStorage storage) {
+        super(capacity, seed, storage);
+        this.storage = storage;
+    }
+
+    /**
+     * Open the memory stored at the given path, or create it if the file does
+     * not exist.
+     * 
+     * @param path
+     * @param capacity
+     * @param dim_of_state
+     * @return memory
+     * @throws IOException
+     */
+    public static MappedMemory open(Path path, int capacity, int dim_of_state) throws IOException {
+        return open(path, capacity, dim_of_state, 0);
+    }
+
+    /**
+     * Open the memory stored at the given path, or create it if the file does
+     * not exist.
+     * 
+     * @param path
+     * @param capacity     must match the capacity of an existing file
+     * @param dim_of_state must match the dimension of an existing file
+     * @param seed
+     * @return memory
+     * @throws IOException
+     */
+    public static MappedMemory open(Path path, int capacity, int dim_of_state, int seed) throws IOException {
+        return new MappedMemory(capacity, seed, MappedStorage.open(path, capacity, dim_of_state));
+    }
+
+    /**
+     * Write the records and then the header back to the disk.
+     */
+    public void flush() {
+        storage.flush();
+    }
+
+    /**
+     * Flush the file instead of copying the transitions into the checkpoint,
+     * which only keeps the staged transition and the random generator.
+     */
+    @Override
+    protected void saveTransitions(DataOutputStream output) {
+        flush();
+    }
+
+    /**
+     * Flush the file on the writer thread, which is safe while transitions are
+     * added.
+     */
+    @Override
+    protected Checkpoint.Deferred deferTransitions() {
+        return output -> flush();
+    }
+
+    /**
+     * Keep the transitions of the file, which are the ones of the checkpoint
+     * unless the memory has been updated after the checkpoint was saved.
+     */
+    @Override
+    protected void loadTransitions(DataInputStream input, int saved_dim_of_state, int saved_head, int saved_size)
+            throws IOException {
+        if (saved_dim_of_state >= 0 && saved_dim_of_state != storage.getDimOfState()) {
+            throw new IOException("Expected state of dimension " + storage.getDimOfState() + " but got "
+                    + saved_dim_of_state);
+        }
+    }
+
+    /**
+     * Flush and close the file. The mapping itself is released once the memory
+     * is garbage collected.
+     * 
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        storage.flush();
+        storage.channel.close();
+    }
+
+    /**
+     * Layout of the file, in little-endian order: a header of whole pages with
+     * the magic number, the version, the dimension of the states, the capacity,
+     * two alternating slots of (sequence, head, size), and a journal of
+     * (sequence, head, size, record); then the records, each of 2 *
+     * dim_of_state floats, an int action, a float reward, and an int mask.
+     */
+    private static final class MappedStorage implements ReplayStorage {
+        private static final long MAGIC = 0x59414c5045524c52L;
+        private static final int VERSION = 1;
+        private static final long SEGMENT_BYTES = 1L << 30;
+        private static final int PAGE_BYTES = 4096;
+
+        private static final int MAGIC_OFFSET = 0;
+        private static final int VERSION_OFFSET = 8;
+        private static final int DIM_OFFSET = 12;
+        private static final int CAPACITY_OFFSET = 16;
+        private static final int SLOT_OFFSET = 32;
+        private static final int SLOT_BYTES = 16;
+        private static final int JOURNAL_OFFSET = SLOT_OFFSET + 2 * SLOT_BYTES;
+        private static final int RECORD_OFFSET = JOURNAL_OFFSET + 16;
+
+        private final FileChannel channel;
+        private final int dim_of_state;
+        private final int record_floats;
+        private final int records_per_segment;
+        private final float[] zeros;
+
+        private final MappedByteBuffer header;
+        private final ByteBuffer journal_bytes;
+        private final FloatBuffer journal;
+        private final MappedByteBuffer[] segments;
+        private final FloatBuffer[] segment_floats;
+
+        private long sequence;
+        private int head;
+        private int size;
+
+        private MappedStorage(FileChannel channel, int capacity, int dim_of_state) throws IOException {
+            this.channel = channel;
+            this.dim_of_state = dim_of_state;
+            this.record_floats = 2 * dim_of_state + 3;
+            this.zeros = new float[dim_of_state];
+
+            long record_bytes = (long) record_floats * Float.BYTES;
+            int header_bytes = (int) ((RECORD_OFFSET + record_bytes + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES);
+            this.header = map(channel, 0, header_bytes);
+            this.journal_bytes = header.duplicate().position(RECORD_OFFSET).limit((int) (RECORD_OFFSET + record_bytes))
+                    .slice().order(ByteOrder.LITTLE_ENDIAN);
+            this.journal = journal_bytes.asFloatBuffer();
+
+            this.records_per_segment = (int) Math.max(1, SEGMENT_BYTES / record_bytes);
+            int num_of_segments = (capacity + records_per_segment - 1) / records_per_segment;
+            this.segments = new MappedByteBuffer[num_of_segments];
+            this.segment_floats = new FloatBuffer[num_of_segments];
+            for (int i = 0; i < num_of_segments; i++) {
+                long first = (long) i * records_per_segment;
+                long records = Math.min(records_per_segment, capacity - first);
+                segments[i] = map(channel, header_bytes + first * record_bytes, records * record_bytes);
+                segment_floats[i] = segments[i].asFloatBuffer();
+            }
+        }
+
+        private static MappedStorage open(Path path, int capacity, int dim_of_state) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                MappedStorage storage = new MappedStorage(channel, capacity, dim_of_state);
+                storage.restore(capacity);
+                return storage;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private static MappedByteBuffer map(FileChannel channel, long position, long bytes) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+
+        /**
+         * Initialize a new file, or read the header of an existing one and
+         * complete the journaled write if the previous run crashed in between.
+         * 
+         * @param capacity
+         * @throws IOException
+         */
+        private void restore(int capacity) throws IOException {
+            long magic = header.getLong(MAGIC_OFFSET);
+            if (magic == 0) {
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(DIM_OFFSET, dim_of_state);
+                header.putInt(CAPACITY_OFFSET, capacity);
+                sequence = -1;
+                commit(-1, 0);
+                VarHandle.releaseFence();
+                header.putLong(MAGIC_OFFSET, MAGIC);
+                return;
+            }
+
+            if (magic != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a replay memory file of version " + VERSION);
+            }
+            if (header.getInt(DIM_OFFSET) != dim_of_state || header.getInt(CAPACITY_OFFSET) != capacity) {
+                throw new IllegalArgumentException("Expected state of dimension " + header.getInt(DIM_OFFSET)
+                        + " and capacity " + header.getInt(CAPACITY_OFFSET));
+            }
+
+            int latest = header.getLong(SLOT_OFFSET) >= header.getLong(SLOT_OFFSET + SLOT_BYTES) ? SLOT_OFFSET
+                    : SLOT_OFFSET + SLOT_BYTES;
+            sequence = header.getLong(latest);
+            head = header.getInt(latest + 8);
+            size = header.getInt(latest + 12);
+
+            if (header.getLong(JOURNAL_OFFSET) == sequence + 1) {
+                int journal_head = header.getInt(JOURNAL_OFFSET + 8);
+                ByteBuffer record = segments[journal_head / records_per_segment].duplicate();
+                record.position(offsetOf(journal_head));
+                record.put(journal_bytes.clear());
+                VarHandle.releaseFence();
+                commit(journal_head, header.getInt(JOURNAL_OFFSET + 12));
+            }
+        }
+
+        /**
+         * Store the head and the size in the older slot, stamping the sequence
+         * last so that a torn update leaves the newer slot in effect.
+         * 
+         * @param head
+         * @param size
+         */
+        private void commit(int head, int size) {
+            long next = sequence + 1;
+            int slot = SLOT_OFFSET + (int) (next & 1) * SLOT_BYTES;
+            header.putInt(slot + 8, head);
+            header.putInt(slot + 12, size);
+            VarHandle.releaseFence();
+            header.putLong(slot, next);
+
+            this.sequence = next;
+            this.head = head;
+            this.size = size;
+        }
+
+        /**
+         * Position the view of the segment containing the record.
+         * 
+         * @param index
+         * @return view of the segment positioned at the record
+         */
+        private FloatBuffer locate(int index) {
+            FloatBuffer floats = segment_floats[index / records_per_segment];
+            floats.clear().position((index % records_per_segment) * record_floats);
+            return floats;
+        }
+
+        private int offsetOf(int index) {
+            return (index % records_per_segment) * record_floats * Float.BYTES;
+        }
+
+        private void writeRecord(FloatBuffer floats, ByteBuffer bytes, int offset, float[] state, float[] state_next,
+                int action, float reward, boolean mask) {
+            floats.put(state, 0, dim_of_state);
+            floats.put(state_next != null ? state_next : zeros, 0, dim_of_state);
+            int tail = offset + 2 * dim_of_state * Float.BYTES;
+            bytes.putInt(tail, action);
+            bytes.putFloat(tail + 4, reward);
+            bytes.putInt(tail + 8, mask ? 1 : 0);
+        }
+
+        private void flush() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+        }
+
+        @Override
+        public int getDimOfState() {
+            return dim_of_state;
+        }
+
+        @Override
+        public void allocate(int dim_of_state) {
+            if (this.dim_of_state != dim_of_state) {
+                throw new IllegalArgumentException(
+                        "Expected state of dimension " + this.dim_of_state + " but got " + dim_of_state);
+            }
+        }
+
+        @Override
+        public void write(int head, int size, float[] state, float[] state_next, int action, float reward,
+                boolean mask) {
+            journal.clear();
+            writeRecord(journal, header, RECORD_OFFSET, state, state_next, action, reward, mask);
+            header.putInt(JOURNAL_OFFSET + 8, head);
+            header.putInt(JOURNAL_OFFSET + 12, size);
+            VarHandle.releaseFence();
+            header.putLong(JOURNAL_OFFSET, sequence + 1);
+            VarHandle.releaseFence();
+
+            writeRecord(locate(head), segments[head / records_per_segment], offsetOf(head), state, state_next,
+                    action, reward, mask);
+            VarHandle.releaseFence();
+            commit(head, size);
+        }
+
+        @Override
+        public void clear() {
+            commit(-1, 0);
+        }
+
+        @Override
+        public int getHead() {
+            return head;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public void getState(int index, float[] state) {
+            locate(index).get(state, 0, dim_of_state);
+        }
+
+        @Override
+        public void getNextState(int index, float[] state_next) {
+            FloatBuffer floats = locate(index);
+            floats.position(floats.position() + dim_of_state).get(state_next, 0, dim_of_state);
+        }
+
+        @Override
+        public void putState(int index, FloatBuffer output) {
+            FloatBuffer floats = locate(index);
+            output.put(floats.limit(floats.position() + dim_of_state));
+        }
+
+        @Override
+        public void putNextState(int index, FloatBuffer output) {
+            FloatBuffer floats = locate(index);
+            int start = floats.position() + dim_of_state;
+            output.put(floats.limit(start + dim_of_state).position(start));
+        }
+
+        @Override
+        public int getAction(int index) {
+            return segments[index / records_per_segment].getInt(offsetOf(index) + 2 * dim_of_state * Float.BYTES);
+        }
+
+        @Override
+        public float getReward(int index) {
+            return segments[index / records_per_segment]
+                    .getFloat(offsetOf(index) + (2 * dim_of_state + 1) * Float.BYTES);
+        }
+
+        @Override
+        public boolean isMasked(int index) {
+            return segments[index / records_per_segment]
+                    .getInt(offsetOf(index) + (2 * dim_of_state + 2) * Float.BYTES) != 0;
+        }
+    }
+}
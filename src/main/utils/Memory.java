@@ -1,18 +1,47 @@
 package main.utils;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
 import main.utils.datatype.MemoryBatch;
 import main.utils.datatype.Transition;
 
-public final class Memory {
-    private final Random random;
-    private final int capacity;
-    private final Transition[] memory;
+/**
+ * Replay memory with a columnar layout. States and next states are stored in
+ * contiguous float arrays of a fixed stride, and actions, rewards, and masks
+ * in primitive columns, so that adding a transition writes in place instead
+ * of allocating a {@link Transition}. Batches are gathered straight from the
+ * columns into pooled direct buffers, which are handed to the engine without
+ * an intermediate copy on the Java heap. The columns live on the heap, see
+ * {@link MappedMemory} for a memory stored in a file.
+ */
+public class Memory {
+    protected final StatefulRandom random;
+    protected final int capacity;
+    private final Map<Integer, BatchBuffer> buffers = new HashMap<>();
+
+    private final ReplayStorage storage;
+    private final Object save_lock = new Object();
+    private final List<SavedTransitions> saves = new ArrayList<>();
+
+    private int dim_of_state = -1;
+    private volatile boolean saving;
 
     private float[] state_prev;
+    private boolean has_state_prev;
     private int action;
     private float reward;
     private boolean mask;
@@ -25,19 +54,38 @@ public final class Memory {
     }
 
     public Memory(int capacity, int seed) {
+        this(capacity, seed, new HeapStorage(capacity));
+    }
+
+    /**
+     * Create a memory on top of the given columns, resuming from the head and
+     * size they hold.
+     * 
+     * @param capacity
+     * @param seed
+     * @param storage
+     */
+    Memory(int capacity, int seed, ReplayStorage storage) {
         this.capacity = capacity;
-        this.memory = new Transition[capacity];
-        this.random = new Random(seed);
+        this.random = new StatefulRandom(seed);
+        this.storage = storage;
 
-        reset();
+        clear();
+        if (storage.getDimOfState() >= 0) {
+            allocate(storage.getDimOfState());
+            head = storage.getHead();
+            size = storage.getSize();
+        }
     }
 
     public void setState(float[] state) {
         assertStage(0);
-        if (state_prev != null) {
-            add(new Transition(state_prev, state, action, reward, mask));
+        allocate(state.length);
+        if (has_state_prev) {
+            add(state_prev, state, action, reward, mask);
         }
-        state_prev = state;
+        System.arraycopy(state, 0, state_prev, 0, dim_of_state);
+        has_state_prev = true;
 
     }
 
@@ -52,35 +100,164 @@ public final class Memory {
         this.mask = mask;
 
         if (mask) {
-            add(new Transition(state_prev, null, action, reward, mask));
-            state_prev = null;
+            add(state_prev, null, action, reward, mask);
+            has_state_prev = false;
             action = -1;
         }
 
     }
 
+    /**
+     * Add a complete transition, bypassing the staged setState, setAction, and
+     * setRewardAndMask calls, e.g. to interleave several environments.
+     * 
+     * @param state
+     * @param state_next null if the transition is terminal
+     * @param action
+     * @param reward
+     * @param mask
+     */
+    public void add(float[] state, float[] state_next, int action, float reward, boolean mask) {
+        allocate(state.length);
+        head += 1;
+        if (head >= capacity) {
+            head = 0;
+        }
+        if (size < capacity) {
+            size++;
+        }
+
+        if (saving) {
+            synchronized (save_lock) {
+                for (SavedTransitions save : saves) {
+                    save.preserve(head);
+                }
+                storage.write(head, size, state, state_next, action, reward, mask);
+            }
+        } else {
+            storage.write(head, size, state, state_next, action, reward, mask);
+        }
+        stored(head);
+    }
+
     public Transition[] sample(int sample_size) {
         Transition[] chunk = new Transition[sample_size];
         for (int i = 0; i < sample_size; i++) {
-            chunk[i] = memory[random.nextInt(size)];
+            chunk[i] = get(random.nextInt(size));
         }
 
         return chunk;
     }
 
+    /**
+     * Sample a batch uniformly with replacement. The returned arrays may share
+     * pooled buffers with the next batch of a similar size, so they should be
+     * consumed before sampling again.
+     * 
+     * @param sample_size
+     * @param manager
+     * @return batch
+     */
     public MemoryBatch sampleBatch(int sample_size, NDManager manager) {
-        return getBatch(sample(sample_size), manager, sample_size);
+        BatchBuffer buffer = getBuffer(sample_size);
+        sampleIndexes(buffer.indexes, sample_size);
+
+        MemoryBatch batch = getBatch(buffer, sample_size, manager);
+        if (sampleWeights(buffer.indexes, sample_size, buffer.weights.clear())) {
+            batch.add(manager.create(buffer.getWeights(sample_size), new Shape(sample_size), DataType.FLOAT32));
+        }
+
+        return batch;
     }
 
+    /**
+     * Get all the transitions from the oldest to the latest. The same buffer
+     * sharing rule as {@link #sampleBatch(int, NDManager)} applies.
+     * 
+     * @param manager
+     * @return batch
+     */
     public MemoryBatch getOrderedBatch(NDManager manager) {
-        return getBatch(memory, manager, size());
+        BatchBuffer buffer = getBuffer(size);
+        int[] indexes = buffer.indexes;
+        int index = head;
+        for (int i = 0; i < size; i++) {
+            index++;
+            if (index >= size) {
+                index = 0;
+            }
+            indexes[i] = index;
+        }
+
+        return getBatch(buffer, size, manager);
+    }
+
+    /**
+     * Update the priorities of the sampled transitions with their absolute
+     * temporal difference errors. Uniform memory ignores the priorities.
+     * 
+     * @param indexes as returned by {@link MemoryBatch#getIndexes()}
+     * @param errors
+     */
+    public void updatePriorities(int[] indexes, float[] errors) {
+        // No effect
     }
 
     public Transition get(int index) {
-        if (index < 0 || index >= size) {
-            throw new ArrayIndexOutOfBoundsException("Index out of bound " + index);
+        checkIndex(index);
+        float[] state = new float[dim_of_state];
+        storage.getState(index, state);
+        boolean mask = storage.isMasked(index);
+        float[] state_next = null;
+        if (!mask) {
+            state_next = new float[dim_of_state];
+            storage.getNextState(index, state_next);
         }
-        return memory[index];
+
+        return new Transition(state, state_next, storage.getAction(index), storage.getReward(index), mask);
+    }
+
+    /**
+     * Copy the state of the transition at the given index without allocating.
+     * 
+     * @param index
+     * @param state output
+     */
+    public void getState(int index, float[] state) {
+        checkIndex(index);
+        storage.getState(index, state);
+    }
+
+    /**
+     * Copy the next state of the transition at the given index without
+     * allocating. The output is left untouched if the transition is terminal.
+     * 
+     * @param index
+     * @param state_next output
+     * @return false if the transition is terminal
+     */
+    public boolean getNextState(int index, float[] state_next) {
+        checkIndex(index);
+        if (storage.isMasked(index)) {
+            return false;
+        }
+        storage.getNextState(index, state_next);
+        return true;
+    }
+
+    public int getAction(int index) {
+        checkIndex(index);
+        return storage.getAction(index);
+    }
+
+    public float getReward(int index) {
+        checkIndex(index);
+        return storage.getReward(index);
+    }
+
+    public boolean isMasked(int index) {
+        checkIndex(index);
+        return storage.isMasked(index);
     }
 
     public int size() {
@@ -88,7 +265,236 @@ public final class Memory {
     }
 
     public void reset() {
-        state_prev = null;
+        awaitSaves();
+        clear();
+        storage.clear();
+    }
+
+    /**
+     * Drop the stored transitions but keep the staged state and action, e.g.
+     * after an update in the middle of an episode. The next transition is
+     * stored at index 0.
+     */
+    public void clearTransitions() {
+        awaitSaves();
+        head = -1;
+        size = 0;
+        storage.clear();
+    }
+
+    /**
+     * Write the staged state, action and reward, the state of the random
+     * generator, and the transitions from the oldest to the latest at their
+     * indexes. The transitions are streamed record by record, so that the
+     * output is never held on the heap. In a checkpoint saved asynchronously,
+     * they are written later by {@link #deferTransitions()}.
+     * 
+     * @param output
+     * @throws IOException
+     */
+    public void save(DataOutputStream output) throws IOException {
+        output.writeInt(capacity);
+        output.writeInt(dim_of_state);
+        output.writeInt(head);
+        output.writeInt(size);
+        output.writeLong(random.getState());
+
+        output.writeInt(stage);
+        output.writeInt(action);
+        output.writeFloat(reward);
+        output.writeBoolean(mask);
+        output.writeBoolean(has_state_prev);
+        if (dim_of_state < 0) {
+            return;
+        }
+        Checkpoint.writeFloats(output, state_prev);
+        if (Checkpoint.isDeferred(output)) {
+            Checkpoint.defer(output, deferTransitions());
+        } else {
+            saveTransitions(output);
+        }
+    }
+
+    /**
+     * Replace the content of the memory by a saved one of the same capacity.
+     * 
+     * @param input
+     * @throws IOException
+     */
+    public void load(DataInputStream input) throws IOException {
+        int saved_capacity = input.readInt();
+        int saved_dim_of_state = input.readInt();
+        if (saved_capacity != capacity) {
+            throw new IOException("Expected memory of capacity " + capacity + " but got " + saved_capacity);
+        }
+        int saved_head = input.readInt();
+        int saved_size = input.readInt();
+        long saved_random = input.readLong();
+
+        int saved_stage = input.readInt();
+        int saved_action = input.readInt();
+        float saved_reward = input.readFloat();
+        boolean saved_mask = input.readBoolean();
+        boolean saved_has_state_prev = input.readBoolean();
+        float[] saved_state_prev = saved_dim_of_state < 0 ? null : Checkpoint.readFloats(input);
+        loadTransitions(input, saved_dim_of_state, saved_head, saved_size);
+
+        random.setState(saved_random);
+        stage = saved_stage;
+        action = saved_action;
+        reward = saved_reward;
+        mask = saved_mask;
+        has_state_prev = saved_has_state_prev;
+        if (saved_state_prev != null) {
+            allocate(saved_dim_of_state);
+            System.arraycopy(saved_state_prev, 0, state_prev, 0, dim_of_state);
+        }
+    }
+
+    /**
+     * Write the transitions from the oldest to the latest, each as a record of
+     * the state, the next state, the action, the reward, and the mask.
+     * 
+     * @param output
+     * @throws IOException
+     */
+    protected void saveTransitions(DataOutputStream output) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate((2 * dim_of_state + 3) * Float.BYTES);
+        FloatBuffer record_floats = record.asFloatBuffer();
+        for (int i = 0; i < size; i++) {
+            putRecord(Math.floorMod(head - size + 1 + i, capacity), record, record_floats);
+            output.write(record.array());
+        }
+    }
+
+    /**
+     * Return the transitions as they are now, to be written in the format of
+     * {@link #saveTransitions(DataOutputStream)} by the writer thread of
+     * {@link Checkpoint} while the memory keeps being updated. Until they are
+     * written, a transition about to be overwritten is first copied aside, and
+     * resetting the memory waits.
+     * 
+     * @return transitions to be written
+     */
+    protected Checkpoint.Deferred deferTransitions() {
+        SavedTransitions save = new SavedTransitions(head, size);
+        synchronized (save_lock) {
+            saves.add(save);
+            saving = true;
+        }
+        return save;
+    }
+
+    /**
+     * Reset the memory and read the transitions written by
+     * {@link #saveTransitions(DataOutputStream)}.
+     * 
+     * @param input
+     * @param saved_dim_of_state -1 if no transition was written
+     * @param saved_head
+     * @param saved_size
+     * @throws IOException
+     */
+    protected void loadTransitions(DataInputStream input, int saved_dim_of_state, int saved_head, int saved_size)
+            throws IOException {
+        reset();
+        if (saved_dim_of_state < 0) {
+            return;
+        }
+        allocate(saved_dim_of_state);
+
+        ByteBuffer record = ByteBuffer.allocate((2 * dim_of_state + 3) * Float.BYTES);
+        FloatBuffer record_floats = record.asFloatBuffer();
+        float[] state = new float[dim_of_state];
+        float[] state_next = new float[dim_of_state];
+        for (int i = 0; i < saved_size; i++) {
+            int index = Math.floorMod(saved_head - saved_size + 1 + i, capacity);
+            input.readFully(record.array());
+            record_floats.clear();
+            record_floats.get(state).get(state_next);
+            boolean masked = record.getInt((2 * dim_of_state + 2) * Float.BYTES) != 0;
+            storage.write(index, i + 1, state, masked ? null : state_next,
+                    record.getInt(2 * dim_of_state * Float.BYTES),
+                    record.getFloat((2 * dim_of_state + 1) * Float.BYTES), masked);
+        }
+        head = saved_head;
+        size = saved_size;
+    }
+
+    /**
+     * Draw the indexes of a batch, uniformly with replacement by default.
+     * 
+     * @param indexes
+     * @param sample_size
+     */
+    protected void sampleIndexes(int[] indexes, int sample_size) {
+        for (int i = 0; i < sample_size; i++) {
+            indexes[i] = random.nextInt(size);
+        }
+    }
+
+    /**
+     * Fill in the importance sampling weights of the sampled indexes.
+     * 
+     * @param indexes
+     * @param sample_size
+     * @param weights
+     * @return false if the batch is unweighted
+     */
+    protected boolean sampleWeights(int[] indexes, int sample_size, FloatBuffer weights) {
+        return false;
+    }
+
+    /**
+     * Called after a transition is written at the given index.
+     * 
+     * @param index
+     */
+    protected void stored(int index) {
+        // No effect
+    }
+
+    /**
+     * Wait until the transitions of the pending checkpoints are written.
+     */
+    private void awaitSaves() {
+        if (!saving) {
+            return;
+        }
+        boolean interrupted = false;
+        synchronized (save_lock) {
+            while (saving) {
+                try {
+                    save_lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the transition at the index into a record of the state, the next
+     * state, the action, the reward, and the mask.
+     * 
+     * @param index
+     * @param record
+     * @param record_floats float view of the record
+     */
+    private void putRecord(int index, ByteBuffer record, FloatBuffer record_floats) {
+        record_floats.clear();
+        storage.putState(index, record_floats);
+        storage.putNextState(index, record_floats);
+        record.putInt(2 * dim_of_state * Float.BYTES, storage.getAction(index));
+        record.putFloat((2 * dim_of_state + 1) * Float.BYTES, storage.getReward(index));
+        record.putInt((2 * dim_of_state + 2) * Float.BYTES, storage.isMasked(index) ? 1 : 0);
+    }
+
+    private void clear() {
+        has_state_prev = false;
         action = -1;
         reward = 0.0F;
         mask = false;
@@ -99,18 +505,35 @@ public final class Memory {
 
     @Override
     public String toString() {
-        return Arrays.toString(memory);
+        Transition[] transitions = new Transition[size];
+        for (int i = 0; i < size; i++) {
+            transitions[i] = get(i);
+        }
+        return Arrays.toString(transitions);
     }
 
-    private void add(Transition transition) {
-        head += 1;
-        if (head >= capacity) {
-            head = 0;
+    /**
+     * Allocate the columns once the dimension of the states is known.
+     * 
+     * @param dim_of_state
+     */
+    private void allocate(int dim_of_state) {
+        if (this.dim_of_state == dim_of_state) {
+            return;
+        }
+        if (this.dim_of_state >= 0) {
+            throw new IllegalArgumentException(
+                    "Expected state of dimension " + this.dim_of_state + " but got " + dim_of_state);
         }
 
-        memory[head] = transition;
-        if (size < capacity) {
-            size++;
+        this.dim_of_state = dim_of_state;
+        storage.allocate(dim_of_state);
+        this.state_prev = new float[dim_of_state];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bound " + index);
         }
     }
 
@@ -139,30 +562,271 @@ public final class Memory {
         }
     }
 
-    private MemoryBatch getBatch(Transition[] transitions, NDManager manager, int batch_size) {
+    private BatchBuffer getBuffer(int batch_size) {
+        int bucket = Integer.highestOneBit(Math.max(batch_size - 1, 1)) << 1;
+        BatchBuffer buffer = buffers.get(bucket);
+        if (buffer == null) {
+            buffer = new BatchBuffer(bucket, dim_of_state);
+            buffers.put(bucket, buffer);
+        }
+        return buffer;
+    }
 
-        float[][] states = new float[batch_size][];
-        float[][] next_states = new float[batch_size][];
-        int[] actions = new int[batch_size];
-        float[] rewards = new float[batch_size];
-        boolean[] masks = new boolean[batch_size];
+    private MemoryBatch getBatch(BatchBuffer buffer, int batch_size, NDManager manager) {
+        FloatBuffer batch_states = buffer.states.clear();
+        FloatBuffer batch_next_states = buffer.next_states.clear();
+        IntBuffer batch_actions = buffer.actions.clear();
+        FloatBuffer batch_rewards = buffer.rewards.clear();
+        ByteBuffer batch_masks = buffer.masks.clear();
 
-        int index = head;
         for (int i = 0; i < batch_size; i++) {
-            index++;
-            if (index >= batch_size) {
-                index = 0;
+            int index = buffer.indexes[i];
+            storage.putState(index, batch_states);
+            storage.putNextState(index, batch_next_states);
+            batch_actions.put(storage.getAction(index));
+            batch_rewards.put(storage.getReward(index));
+            batch_masks.put(storage.isMasked(index) ? (byte) 1 : (byte) 0);
+        }
+
+        Shape shape = new Shape(batch_size, dim_of_state);
+        Shape column_shape = new Shape(batch_size);
+        return new MemoryBatch(buffer.indexes, manager.create(buffer.getStates(batch_size), shape, DataType.FLOAT32),
+                manager.create(buffer.getNextStates(batch_size), shape, DataType.FLOAT32),
+                manager.create(buffer.getActions(batch_size), column_shape, DataType.INT32),
+                manager.create(buffer.getRewards(batch_size), column_shape, DataType.FLOAT32),
+                manager.create(buffer.getMasks(batch_size), column_shape, DataType.BOOLEAN));
+    }
+
+    /**
+     * Transitions of a checkpoint, from the oldest to the latest at the time of
+     * the save, written record by record on the writer thread. A record
+     * overwritten before being written is copied aside by
+     * {@link Memory#add(float[], float[], int, float, boolean)}, so that at
+     * most the saved transitions are copied.
+     */
+    private final class SavedTransitions implements Checkpoint.Deferred {
+        private final int head;
+        private final int size;
+        private final ByteBuffer record;
+        private final FloatBuffer record_floats;
+        private final Map<Integer, byte[]> overwritten = new HashMap<>();
+        private int num_of_written;
+
+        private SavedTransitions(int head, int size) {
+            this.head = head;
+            this.size = size;
+            this.record = ByteBuffer.allocate((2 * dim_of_state + 3) * Float.BYTES);
+            this.record_floats = record.asFloatBuffer();
+        }
+
+        /**
+         * Copy the record at the index aside if it is still to be written.
+         * Called with the lock held.
+         * 
+         * @param index
+         */
+        private void preserve(int index) {
+            int position = Math.floorMod(index - head + size - 1, capacity);
+            if (position >= num_of_written && position < size && !overwritten.containsKey(index)) {
+                ByteBuffer copy = ByteBuffer.allocate(record.capacity());
+                putRecord(index, copy, copy.asFloatBuffer());
+                overwritten.put(index, copy.array());
+            }
+        }
+
+        @Override
+        public void write(DataOutputStream output) throws IOException {
+            for (int i = 0; i < size; i++) {
+                int index = Math.floorMod(head - size + 1 + i, capacity);
+                synchronized (save_lock) {
+                    byte[] copy = overwritten.remove(index);
+                    if (copy != null) {
+                        System.arraycopy(copy, 0, record.array(), 0, copy.length);
+                    } else {
+                        putRecord(index, record, record_floats);
+                    }
+                    num_of_written = i + 1;
+                }
+                output.write(record.array());
+            }
+        }
+
+        @Override
+        public void release() {
+            synchronized (save_lock) {
+                saves.remove(this);
+                saving = !saves.isEmpty();
+                save_lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Columns on the Java heap, allocated once the dimension of the states is
+     * known.
+     */
+    private static final class HeapStorage implements ReplayStorage {
+        private final int capacity;
+
+        private int dim_of_state = -1;
+        private float[] states;
+        private float[] next_states;
+        private int[] actions;
+        private float[] rewards;
+        private boolean[] masks;
+
+        private HeapStorage(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int getDimOfState() {
+            return dim_of_state;
+        }
+
+        @Override
+        public void allocate(int dim_of_state) {
+            this.dim_of_state = dim_of_state;
+            this.states = new float[capacity * dim_of_state];
+            this.next_states = new float[capacity * dim_of_state];
+            this.actions = new int[capacity];
+            this.rewards = new float[capacity];
+            this.masks = new boolean[capacity];
+        }
+
+        @Override
+        public void write(int head, int size, float[] state, float[] state_next, int action, float reward,
+                boolean mask) {
+            int offset = head * dim_of_state;
+            System.arraycopy(state, 0, states, offset, dim_of_state);
+            if (state_next != null) {
+                System.arraycopy(state_next, 0, next_states, offset, dim_of_state);
+            } else {
+                Arrays.fill(next_states, offset, offset + dim_of_state, 0.0f);
             }
-            states[i] = transitions[index].getState();
-            float[] next_state = transitions[index].getNextState();
-            next_states[i] = next_state != null ? next_state : new float[states[i].length];
-            actions[i] = transitions[index].getAction();
-            rewards[i] = transitions[index].getReward();
-            masks[i] = transitions[index].isMasked();
+            actions[head] = action;
+            rewards[head] = reward;
+            masks[head] = mask;
+        }
+
+        @Override
+        public void clear() {
+            // No effect
+        }
+
+        @Override
+        public int getHead() {
+            return -1;
+        }
+
+        @Override
+        public int getSize() {
+            return 0;
+        }
+
+        @Override
+        public void getState(int index, float[] state) {
+            System.arraycopy(states, index * dim_of_state, state, 0, dim_of_state);
+        }
+
+        @Override
+        public void getNextState(int index, float[] state_next) {
+            System.arraycopy(next_states, index * dim_of_state, state_next, 0, dim_of_state);
+        }
+
+        @Override
+        public void putState(int index, FloatBuffer output) {
+            output.put(states, index * dim_of_state, dim_of_state);
         }
 
-        return new MemoryBatch(manager.create(states), manager.create(next_states), manager.create(actions),
-                manager.create(rewards), manager.create(masks));
+        @Override
+        public void putNextState(int index, FloatBuffer output) {
+            output.put(next_states, index * dim_of_state, dim_of_state);
+        }
+
+        @Override
+        public int getAction(int index) {
+            return actions[index];
+        }
+
+        @Override
+        public float getReward(int index) {
+            return rewards[index];
+        }
+
+        @Override
+        public boolean isMasked(int index) {
+            return masks[index];
+        }
+    }
+
+    /**
+     * Direct buffers of one size bucket, reused across batches. Each column is
+     * backed by a native-ordered {@link ByteBuffer} so that the engine can read
+     * it without copying it into a temporary buffer first.
+     */
+    private static final class BatchBuffer {
+        private final int dim_of_state;
+        private final int[] indexes;
+
+        private final ByteBuffer states_bytes;
+        private final ByteBuffer next_states_bytes;
+        private final ByteBuffer actions_bytes;
+        private final ByteBuffer rewards_bytes;
+        private final ByteBuffer weights_bytes;
+
+        private final FloatBuffer states;
+        private final FloatBuffer next_states;
+        private final IntBuffer actions;
+        private final FloatBuffer rewards;
+        private final ByteBuffer masks;
+        private final FloatBuffer weights;
+
+        private BatchBuffer(int batch_size, int dim_of_state) {
+            this.dim_of_state = dim_of_state;
+            this.indexes = new int[batch_size];
+
+            this.states_bytes = allocate(batch_size * dim_of_state * Float.BYTES);
+            this.next_states_bytes = allocate(batch_size * dim_of_state * Float.BYTES);
+            this.actions_bytes = allocate(batch_size * Integer.BYTES);
+            this.rewards_bytes = allocate(batch_size * Float.BYTES);
+            this.masks = allocate(batch_size);
+            this.weights_bytes = allocate(batch_size * Float.BYTES);
+
+            this.states = states_bytes.asFloatBuffer();
+            this.next_states = next_states_bytes.asFloatBuffer();
+            this.actions = actions_bytes.asIntBuffer();
+            this.rewards = rewards_bytes.asFloatBuffer();
+            this.weights = weights_bytes.asFloatBuffer();
+        }
+
+        private ByteBuffer getStates(int batch_size) {
+            return states_bytes.clear().limit(batch_size * dim_of_state * Float.BYTES);
+        }
+
+        private ByteBuffer getNextStates(int batch_size) {
+            return next_states_bytes.clear().limit(batch_size * dim_of_state * Float.BYTES);
+        }
+
+        private ByteBuffer getActions(int batch_size) {
+            return actions_bytes.clear().limit(batch_size * Integer.BYTES);
+        }
+
+        private ByteBuffer getRewards(int batch_size) {
+            return rewards_bytes.clear().limit(batch_size * Float.BYTES);
+        }
+
+        private ByteBuffer getMasks(int batch_size) {
+            return masks.clear().limit(batch_size);
+        }
+
+        private ByteBuffer getWeights(int batch_size) {
+            return weights_bytes.clear().limit(batch_size * Float.BYTES);
+        }
+
+        private static ByteBuffer allocate(int bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
     }
 
 }
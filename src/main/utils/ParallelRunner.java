@@ -0,0 +1,221 @@
+package main.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import main.agent.base.Actor;
+import main.agent.base.BaseDQN;
+import main.env.Environment;
+import main.utils.datatype.StepResult;
+import main.utils.datatype.Transition;
+import main.utils.metrics.Counter;
+import main.utils.metrics.Metrics;
+import main.utils.metrics.Timer;
+
+/**
+ * Actor-learner execution: each actor thread owns an environment and a copy of
+ * the policy, and pushes its transitions into a bounded queue. The calling
+ * thread drains the queue into the replay memory and updates the model, which
+ * publishes its parameters back to the actors whenever it syncs its target net.
+ * The first failure of an actor stops the run and is rethrown by
+ * {@link #run(double)}.
+ */
+public final class ParallelRunner {
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long POLL_TIMEOUT_MILLIS = 10;
+
+    private final BaseDQN agent;
+    private final Supplier<Environment> env_factory;
+    private final int num_of_actors;
+    private final BlockingQueue<Transition> transitions;
+    private final Queue<Float> episode_scores = new ConcurrentLinkedQueue<>();
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Metrics metrics;
+
+    private volatile boolean running;
+
+    /**
+     * Create a runner with the given number of actors, recording into the
+     * metrics already set on the agent, if any.
+     * 
+     * @param agent
+     * @param env_factory creates the environment of each actor
+     * @param num_of_actors
+     * @param queue_size maximum number of pending transitions
+     */
+    public ParallelRunner(BaseDQN agent, Supplier<Environment> env_factory, int num_of_actors, int queue_size) {
+        this(agent, env_factory, num_of_actors, queue_size, agent.getMetrics());
+    }
+
+    /**
+     * Create a runner recording the metrics of the learner and the actors. Each
+     * actor records its own timers, and the metrics are flushed by the learner.
+     * 
+     * @param metrics
+     */
+    public ParallelRunner(BaseDQN agent, Supplier<Environment> env_factory, int num_of_actors, int queue_size,
+            Metrics metrics) {
+        this.agent = agent;
+        this.env_factory = env_factory;
+        this.num_of_actors = num_of_actors;
+        this.transitions = new ArrayBlockingQueue<>(queue_size);
+        this.metrics = metrics;
+        if (metrics != agent.getMetrics()) {
+            agent.setMetrics(metrics);
+        }
+        metrics.gauge("queue.size", transitions::size);
+    }
+
+    /**
+     * Learn until the smoothed episode score reaches the goal.
+     * 
+     * @param goal
+     * @throws IllegalStateException if an actor fails, once the other actors
+     *                               have stopped
+     */
+    public void run(double goal) {
+        List<Thread> actors = new ArrayList<>();
+        List<Transition> chunk = new ArrayList<>();
+        running = true;
+        failure.set(null);
+        steps.set(0);
+        agent.publish();
+
+        for (int i = 0; i < num_of_actors; i++) {
+            int seed = i;
+            Thread actor = new Thread(() -> act(seed), "actor-" + i);
+            actor.setDaemon(true);
+            actor.start();
+            actors.add(actor);
+        }
+
+        double score = Double.NEGATIVE_INFINITY;
+        int episode = 0;
+        long updates = 0;
+        long report_time = System.nanoTime();
+        long report_steps = 0;
+        long report_updates = 0;
+
+        try {
+            while (score < goal && failure.get() == null) {
+                Transition transition = transitions.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (transition != null) {
+                    agent.store(transition);
+                    transitions.drainTo(chunk);
+                    for (Transition pending : chunk) {
+                        agent.store(pending);
+                    }
+                    chunk.clear();
+                }
+
+                if (agent.learn()) {
+                    updates++;
+                }
+
+                Float episode_score;
+                while ((episode_score = episode_scores.poll()) != null) {
+                    episode++;
+                    score = score > Double.NEGATIVE_INFINITY ? score * 0.95 + episode_score * 0.05 : episode_score;
+                    System.out.printf("Episode %d (%d): %.2f\n", episode, episode_score.intValue(), score);
+                }
+
+                long now = System.nanoTime();
+                if (now - report_time >= REPORT_INTERVAL_NANOS) {
+                    double seconds = (now - report_time) * 1e-9;
+                    long total_steps = steps.get();
+                    System.out.printf("%.1f steps/sec, %.1f updates/sec\n", (total_steps - report_steps) / seconds,
+                            (updates - report_updates) / seconds);
+                    report_time = now;
+                    report_steps = total_steps;
+                    report_updates = updates;
+                }
+                metrics.maybeFlush();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } finally {
+            running = false;
+            for (Thread actor : actors) {
+                actor.interrupt();
+            }
+            for (Thread actor : actors) {
+                try {
+                    actor.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            transitions.clear();
+            metrics.flush();
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Actor failed", failure.get());
+        }
+    }
+
+    /**
+     * Run an actor until the learner stops. A failure is recorded for the
+     * learner, unless it happens while stopping.
+     */
+    private void act(int seed) {
+        Timer act_timer = metrics.timer("actor." + seed + ".act");
+        Timer step_timer = metrics.timer("actor." + seed + ".env.step");
+        Counter env_steps = metrics.counter("env.steps");
+
+        try (Actor actor = agent.newActor(seed)) {
+            Environment env = env_factory.get();
+            env.seed(seed);
+
+            StepResult result = new StepResult(env.DimOfStateSpace());
+            float[] state = new float[env.DimOfStateSpace()];
+
+            while (running) {
+                env.reset(result);
+                boolean done = false;
+                float episode_score = 0.0f;
+
+                while (!done && running) {
+                    System.arraycopy(result.getState(), 0, state, 0, state.length);
+                    long start = act_timer.start();
+                    int action = actor.act(state);
+                    act_timer.stop(start);
+
+                    start = step_timer.start();
+                    env.step(action, result);
+                    step_timer.stop(start);
+                    done = result.isMasked();
+                    episode_score += result.getReward();
+
+                    transitions.put(new Transition(state, done ? null : result.getState(), action,
+                            result.getReward(), done));
+                    steps.incrementAndGet();
+                    env_steps.increment();
+                }
+
+                if (done) {
+                    episode_scores.add(episode_score);
+                }
+            }
+
+        } catch (InterruptedException e) {
+            // Stopped by the learner
+
+        } catch (Throwable e) {
+            if (running) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
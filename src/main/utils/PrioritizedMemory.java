@@ -0,0 +1,156 @@
+package main.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Prioritized experience replay. Transitions are sampled with probability
+ * proportional to priority^alpha, where the priority is the absolute temporal
+ * difference error of the latest update, and are weighted by
+ * (size * probability)^-beta normalized by the maximum weight. Priorities are
+ * kept in a sum tree and a min tree over primitive arrays, so that sampling and
+ * updates take O(log capacity).
+ */
+public final class PrioritizedMemory extends Memory {
+    private static final float PRIORITY_EPSILON = 1e-6f;
+
+    private final float alpha;
+    private final float beta;
+    private final int tree_capacity;
+    private final double[] sum_tree;
+    private final float[] min_tree;
+
+    private float max_priority = 1.0f;
+
+    public PrioritizedMemory(int capacity, float alpha, float beta) {
+        this(capacity, alpha, beta, 0);
+    }
+
+    public PrioritizedMemory(int capacity, float alpha, float beta, int seed) {
+        super(capacity, seed);
+        this.alpha = alpha;
+        this.beta = beta;
+
+        int tree_capacity = 1;
+        while (tree_capacity < capacity) {
+            tree_capacity <<= 1;
+        }
+        this.tree_capacity = tree_capacity;
+        this.sum_tree = new double[2 * tree_capacity];
+        this.min_tree = new float[2 * tree_capacity];
+        Arrays.fill(min_tree, Float.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public void updatePriorities(int[] indexes, float[] errors) {
+        for (int i = 0; i < errors.length; i++) {
+            float priority = Math.abs(errors[i]) + PRIORITY_EPSILON;
+            if (priority > max_priority) {
+                max_priority = priority;
+            }
+            setPriority(indexes[i], priority);
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(sum_tree, 0.0);
+        Arrays.fill(min_tree, Float.POSITIVE_INFINITY);
+        max_priority = 1.0f;
+    }
+
+    /**
+     * Write the transitions and their priorities.
+     */
+    @Override
+    public void save(DataOutputStream output) throws IOException {
+        super.save(output);
+        output.writeFloat(max_priority);
+        float[] priorities = new float[capacity];
+        for (int i = 0; i < capacity; i++) {
+            priorities[i] = (float) sum_tree[tree_capacity + i];
+        }
+        Checkpoint.writeFloats(output, priorities);
+    }
+
+    @Override
+    public void load(DataInputStream input) throws IOException {
+        super.load(input);
+        max_priority = input.readFloat();
+        float[] priorities = Checkpoint.readFloats(input);
+        for (int i = 0; i < size(); i++) {
+            setLeaf(i, priorities[i]);
+        }
+    }
+
+    @Override
+    protected void sampleIndexes(int[] indexes, int sample_size) {
+        double total = sum_tree[1];
+        double segment = total / sample_size;
+
+        for (int i = 0; i < sample_size; i++) {
+            indexes[i] = find((i + random.nextDouble()) * segment);
+        }
+    }
+
+    @Override
+    protected boolean sampleWeights(int[] indexes, int sample_size, FloatBuffer weights) {
+        double total = sum_tree[1];
+        double max_weight = Math.pow(size() * min_tree[1] / total, -beta);
+
+        for (int i = 0; i < sample_size; i++) {
+            double probability = sum_tree[tree_capacity + indexes[i]] / total;
+            weights.put((float) (Math.pow(size() * probability, -beta) / max_weight));
+        }
+
+        return true;
+    }
+
+    @Override
+    protected void stored(int index) {
+        setPriority(index, max_priority);
+    }
+
+    private void setPriority(int index, float priority) {
+        setLeaf(index, (float) Math.pow(priority, alpha));
+    }
+
+    private void setLeaf(int index, float value) {
+        int node = tree_capacity + index;
+        sum_tree[node] = value;
+        min_tree[node] = value;
+
+        for (node >>= 1; node >= 1; node >>= 1) {
+            sum_tree[node] = sum_tree[2 * node] + sum_tree[2 * node + 1];
+            min_tree[node] = Math.min(min_tree[2 * node], min_tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Find the leaf where the prefix sum of the priorities exceeds the mass.
+     * The search never descends into a subtree of zero priority, so that a
+     * mass pushed past the total by rounding lands on the last leaf of positive
+     * priority, and never on an empty slot.
+     * 
+     * @param mass
+     * @return index
+     */
+    private int find(double mass) {
+        int node = 1;
+        while (node < tree_capacity) {
+            int left = 2 * node;
+            if (mass < sum_tree[left] || sum_tree[left + 1] <= 0.0) {
+                node = left;
+            } else {
+                mass -= sum_tree[left];
+                node = left + 1;
+            }
+        }
+
+        return node - tree_capacity;
+    }
+}
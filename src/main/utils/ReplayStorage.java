@@ -0,0 +1,72 @@
+package main.utils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Columns of a {@link Memory}. Each transition occupies a fixed slot given by
+ * its index, and {@link Memory} keeps track of which slots are in use.
+ */
+interface ReplayStorage {
+
+    /**
+     * Return the dimension of the states, or -1 if it is not known until the
+     * first transition.
+     * 
+     * @return dimension of the states
+     */
+    int getDimOfState();
+
+    /**
+     * Allocate the columns once the dimension of the states is known.
+     * 
+     * @param dim_of_state
+     */
+    void allocate(int dim_of_state);
+
+    /**
+     * Write a transition into its slot and record the new head and size of the
+     * memory.
+     * 
+     * @param head       index of the slot
+     * @param size       size of the memory including the transition
+     * @param state
+     * @param state_next null if the transition is terminal
+     * @param action
+     * @param reward
+     * @param mask
+     */
+    void write(int head, int size, float[] state, float[] state_next, int action, float reward, boolean mask);
+
+    /**
+     * Record that the memory is empty.
+     */
+    void clear();
+
+    /**
+     * Return the head stored by a previous run, or -1 if the memory is empty.
+     * 
+     * @return head
+     */
+    int getHead();
+
+    /**
+     * Return the size stored by a previous run.
+     * 
+     * @return size
+     */
+    int getSize();
+
+    void getState(int index, float[] state);
+
+    void getNextState(int index, float[] state_next);
+
+    void putState(int index, FloatBuffer output);
+
+    void putNextState(int index, FloatBuffer output);
+
+    int getAction(int index);
+
+    float getReward(int index);
+
+    boolean isMasked(int index);
+}
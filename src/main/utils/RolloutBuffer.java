@@ -0,0 +1,211 @@
+package main.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import main.utils.datatype.MemoryBatch;
+
+/**
+ * Fixed-horizon rollouts of several environments stepped together. Each step
+ * stores one transition per environment; once the horizon is reached, the
+ * trajectories are truncated by folding the discounted value of the following
+ * states into the last rewards, and handed out as a single batch in which the
+ * transitions of each environment are contiguous and end with a masked
+ * transition.
+ */
+public final class RolloutBuffer {
+    private final int num_of_envs;
+    private final int horizon;
+    private final int dim_of_state;
+
+    private final float[] states;
+    private final int[] actions;
+    private final float[] rewards;
+    private final boolean[] masks;
+    private final float[] last_states;
+
+    private final float[] batch_states;
+    private final float[] batch_next_states;
+    private final int[] batch_actions;
+    private final float[] batch_rewards;
+    private final boolean[] batch_masks;
+
+    private int step;
+    private boolean has_actions;
+
+    public RolloutBuffer(int num_of_envs, int horizon, int dim_of_state) {
+        this.num_of_envs = num_of_envs;
+        this.horizon = horizon;
+        this.dim_of_state = dim_of_state;
+
+        int size = num_of_envs * horizon;
+        this.states = new float[size * dim_of_state];
+        this.actions = new int[size];
+        this.rewards = new float[size];
+        this.masks = new boolean[size];
+        this.last_states = new float[num_of_envs * dim_of_state];
+
+        this.batch_states = new float[size * dim_of_state];
+        this.batch_next_states = new float[size * dim_of_state];
+        this.batch_actions = new int[size];
+        this.batch_rewards = new float[size];
+        this.batch_masks = new boolean[size];
+    }
+
+    /**
+     * Store the states and the actions of the current step.
+     * 
+     * @param states  one per environment
+     * @param actions one per environment
+     */
+    public void add(float[][] states, int[] actions) {
+        if (has_actions || isFull()) {
+            throw new IllegalStateException("Rewards of the previous step are missing or the buffer is full");
+        }
+        for (int i = 0; i < num_of_envs; i++) {
+            System.arraycopy(states[i], 0, this.states, (step * num_of_envs + i) * dim_of_state, dim_of_state);
+        }
+        System.arraycopy(actions, 0, this.actions, step * num_of_envs, num_of_envs);
+        has_actions = true;
+    }
+
+    /**
+     * Store the results of the actions of the current step and move to the next
+     * step.
+     * 
+     * @param rewards one per environment
+     * @param masks   one per environment, true if the episode is done
+     */
+    public void setRewardsAndMasks(float[] rewards, boolean[] masks) {
+        if (!has_actions) {
+            throw new IllegalStateException("Actions of the current step are missing");
+        }
+        System.arraycopy(rewards, 0, this.rewards, step * num_of_envs, num_of_envs);
+        System.arraycopy(masks, 0, this.masks, step * num_of_envs, num_of_envs);
+        has_actions = false;
+        step++;
+    }
+
+    public boolean isFull() {
+        return step == horizon;
+    }
+
+    /**
+     * Truncate the trajectories of a full buffer: the last reward of every
+     * environment whose episode is not done is increased by gamma times the
+     * value of the state following it, and the transition is masked.
+     * 
+     * @param next_states states following the last step, one per environment
+     * @param values      values of the next states
+     * @param gamma
+     */
+    public void bootstrap(float[][] next_states, float[] values, float gamma) {
+        if (!isFull()) {
+            throw new IllegalStateException("Only a full buffer can be bootstrapped");
+        }
+        int last = (horizon - 1) * num_of_envs;
+        for (int i = 0; i < num_of_envs; i++) {
+            if (masks[last + i]) {
+                Arrays.fill(last_states, i * dim_of_state, (i + 1) * dim_of_state, 0.0f);
+            } else {
+                System.arraycopy(next_states[i], 0, last_states, i * dim_of_state, dim_of_state);
+                rewards[last + i] += gamma * values[i];
+                masks[last + i] = true;
+            }
+        }
+    }
+
+    /**
+     * Get the transitions of a bootstrapped buffer ordered by environment, then
+     * by step. Next states of terminal transitions are zeros, while truncated
+     * transitions keep theirs.
+     * 
+     * @param manager
+     * @return batch of num_of_envs * horizon transitions
+     */
+    public MemoryBatch getBatch(NDManager manager) {
+        int size = num_of_envs * horizon;
+        int row = 0;
+        for (int i = 0; i < num_of_envs; i++) {
+            for (int t = 0; t < horizon; t++, row++) {
+                int index = t * num_of_envs + i;
+                System.arraycopy(states, index * dim_of_state, batch_states, row * dim_of_state, dim_of_state);
+                if (t + 1 < horizon) {
+                    System.arraycopy(states, (index + num_of_envs) * dim_of_state, batch_next_states,
+                            row * dim_of_state, dim_of_state);
+                } else {
+                    System.arraycopy(last_states, i * dim_of_state, batch_next_states, row * dim_of_state,
+                            dim_of_state);
+                }
+                batch_actions[row] = actions[index];
+                batch_rewards[row] = rewards[index];
+                batch_masks[row] = masks[index];
+            }
+        }
+        for (int t = 0; t < size; t++) {
+            if (batch_masks[t] && (t + 1) % horizon != 0) {
+                Arrays.fill(batch_next_states, t * dim_of_state, (t + 1) * dim_of_state, 0.0f);
+            }
+        }
+
+        Shape shape = new Shape(size, dim_of_state);
+        return new MemoryBatch(manager.create(batch_states, shape), manager.create(batch_next_states, shape),
+                manager.create(batch_actions), manager.create(batch_rewards), manager.create(batch_masks));
+    }
+
+    /**
+     * Write the steps stored so far.
+     * 
+     * @param output
+     * @throws IOException
+     */
+    public void save(DataOutputStream output) throws IOException {
+        output.writeInt(step);
+        output.writeBoolean(has_actions);
+        Checkpoint.writeFloats(output, states);
+        Checkpoint.writeInts(output, actions);
+        Checkpoint.writeFloats(output, rewards);
+        Checkpoint.writeBooleans(output, masks);
+    }
+
+    /**
+     * Replace the steps by saved ones of a buffer of the same dimensions.
+     * 
+     * @param input
+     * @throws IOException
+     */
+    public void load(DataInputStream input) throws IOException {
+        step = input.readInt();
+        has_actions = input.readBoolean();
+        float[] saved_states = Checkpoint.readFloats(input);
+        if (saved_states.length != states.length) {
+            throw new IOException("Expected a rollout of " + num_of_envs + " environments and horizon " + horizon);
+        }
+        System.arraycopy(saved_states, 0, states, 0, states.length);
+        System.arraycopy(Checkpoint.readInts(input), 0, actions, 0, actions.length);
+        System.arraycopy(Checkpoint.readFloats(input), 0, rewards, 0, rewards.length);
+        System.arraycopy(Checkpoint.readBooleans(input), 0, masks, 0, masks.length);
+    }
+
+    public void clear() {
+        step = 0;
+        has_actions = false;
+    }
+
+    public int size() {
+        return step * num_of_envs;
+    }
+
+    public int getNumOfEnvs() {
+        return num_of_envs;
+    }
+
+    public int getHorizon() {
+        return horizon;
+    }
+
+}
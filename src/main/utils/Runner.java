@@ -2,39 +2,84 @@ package main.utils;
 
 import main.agent.base.BaseAgent;
 import main.env.Environment;
-import main.utils.datatype.Snapshot;
+import main.utils.datatype.StepResult;
+import main.utils.metrics.Counter;
+import main.utils.metrics.Histogram;
+import main.utils.metrics.Metrics;
+import main.utils.metrics.Timer;
 
 public final class Runner {
     private final BaseAgent agent;
     private final Environment env;
+    private final Metrics metrics;
 
+    /**
+     * Create a runner recording into the metrics already set on the agent, if
+     * any, which are left in place.
+     * 
+     * @param agent
+     * @param env
+     */
     public Runner(BaseAgent agent, Environment env) {
+        this(agent, env, agent.getMetrics());
+    }
+
+    /**
+     * Create a runner recording the metrics of the agent and the environment.
+     * The metrics are flushed at the end of the episodes.
+     * 
+     * @param agent
+     * @param env
+     * @param metrics
+     */
+    public Runner(BaseAgent agent, Environment env, Metrics metrics) {
         this.agent = agent;
         this.env = env;
+        this.metrics = metrics;
+        if (metrics != agent.getMetrics()) {
+            agent.setMetrics(metrics);
+        }
     }
 
     public void run(double goal) {
         double score = Double.NEGATIVE_INFINITY;
         int episode = 0;
 
+        StepResult result = new StepResult(env.DimOfStateSpace());
+        Timer react_timer = metrics.timer("agent.react");
+        Timer step_timer = metrics.timer("env.step");
+        Counter steps = metrics.counter("env.steps");
+        Histogram episode_scores = metrics.histogram("env.episode_score");
+
         while (score < goal) {
             episode++;
-            Snapshot snapshot = env.reset();
+            env.reset(result);
             boolean done = false;
             int episode_score = 0;
 
             while (!done) {
                 env.render();
-                snapshot = env.step(agent.react(snapshot.getState()));
-                done = snapshot.isMasked();
-                episode_score += snapshot.getReward();
-                agent.collect(snapshot.getReward(), done);
+                long start = react_timer.start();
+                int action = agent.react(result.getState());
+                react_timer.stop(start);
+
+                start = step_timer.start();
+                env.step(action, result);
+                step_timer.stop(start);
+                steps.increment();
+
+                done = result.isMasked();
+                episode_score += result.getReward();
+                agent.collect(result.getReward(), done);
 
             }
             score = score > Double.NEGATIVE_INFINITY ? score * 0.95 + episode_score * 0.05 : episode_score;
             System.out.printf("Episode %d (%d): %.2f\n", episode, episode_score, score);
+            episode_scores.record(episode_score);
+            metrics.maybeFlush();
 
         }
+        metrics.flush();
 
     }
 }
@@ -0,0 +1,43 @@
+package main.utils;
+
+import java.util.Random;
+
+/**
+ * {@link Random} whose internal state can be read and restored, so that a
+ * checkpointed agent draws the same numbers after resuming. It generates the
+ * same sequence as {@link Random} for the same seed, but is not thread-safe,
+ * and the cached value of {@link #nextGaussian()} is not part of the state.
+ */
+public class StatefulRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    public StatefulRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+}
@@ -0,0 +1,76 @@
+package main.utils;
+
+import main.agent.base.BaseAgent;
+import main.env.BaseVectorEnvironment;
+import main.utils.datatype.VectorSnapshot;
+import main.utils.metrics.Counter;
+import main.utils.metrics.Histogram;
+import main.utils.metrics.Metrics;
+import main.utils.metrics.Timer;
+
+public final class VectorRunner {
+    private final BaseAgent agent;
+    private final BaseVectorEnvironment env;
+    private final Metrics metrics;
+
+    /**
+     * Create a runner recording into the metrics already set on the agent, if
+     * any, which are left in place.
+     * 
+     * @param agent
+     * @param env
+     */
+    public VectorRunner(BaseAgent agent, BaseVectorEnvironment env) {
+        this(agent, env, agent.getMetrics());
+    }
+
+    public VectorRunner(BaseAgent agent, BaseVectorEnvironment env, Metrics metrics) {
+        this.agent = agent;
+        this.env = env;
+        this.metrics = metrics;
+        if (metrics != agent.getMetrics()) {
+            agent.setMetrics(metrics);
+        }
+    }
+
+    public void run(double goal) {
+        double score = Double.NEGATIVE_INFINITY;
+        int episode = 0;
+        float[] episode_scores = new float[env.size()];
+
+        Timer react_timer = metrics.timer("agent.react");
+        Timer step_timer = metrics.timer("env.step");
+        Counter steps = metrics.counter("env.steps");
+        Histogram scores = metrics.histogram("env.episode_score");
+
+        VectorSnapshot snapshot = env.reset();
+        while (score < goal) {
+            env.render();
+            long start = react_timer.start();
+            int[] actions = agent.react(snapshot.getStates());
+            react_timer.stop(start);
+
+            start = step_timer.start();
+            snapshot = env.step(actions);
+            step_timer.stop(start);
+            steps.add(env.size());
+
+            agent.collect(snapshot.getRewards(), snapshot.getMasks());
+
+            for (int i = 0; i < env.size(); i++) {
+                episode_scores[i] += snapshot.getRewards()[i];
+                if (snapshot.getMasks()[i]) {
+                    episode++;
+                    score = score > Double.NEGATIVE_INFINITY ? score * 0.95 + episode_scores[i] * 0.05
+                            : episode_scores[i];
+                    System.out.printf("Episode %d (%d): %.2f\n", episode, (int) episode_scores[i], score);
+                    scores.record(episode_scores[i]);
+                    episode_scores[i] = 0.0f;
+                }
+            }
+            metrics.maybeFlush();
+        }
+        metrics.flush();
+
+    }
+}
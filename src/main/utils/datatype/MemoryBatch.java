@@ -5,9 +5,34 @@ import ai.djl.ndarray.NDList;
 
 public final class MemoryBatch extends NDList {
     private static final long serialVersionUID = 1L;
+    private final int[] indexes;
 
     public MemoryBatch(NDArray... arrays) {
+        this(null, arrays);
+    }
+
+    public MemoryBatch(int[] indexes, NDArray... arrays) {
         super(arrays);
+        this.indexes = indexes;
+    }
+
+    /**
+     * Get the memory indexes of the rows, valid until the next batch is sampled.
+     * 
+     * @return indexes, or null if unknown
+     */
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Get the number of transitions, as opposed to {@link #size()}, which is
+     * the number of arrays.
+     * 
+     * @return batch size
+     */
+    public int getBatchSize() {
+        return (int) getStates().size(0);
     }
 
     public NDArray getActions() {
@@ -29,4 +54,13 @@ public final class MemoryBatch extends NDList {
     public NDArray getNextStates() {
         return get(1);
     }
+
+    /**
+     * Get the importance sampling weights of a prioritized batch.
+     * 
+     * @return weights, or null if the batch is sampled uniformly
+     */
+    public NDArray getWeights() {
+        return size() > 5 ? get(5) : null;
+    }
 }
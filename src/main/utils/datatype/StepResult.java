@@ -0,0 +1,77 @@
+package main.utils.datatype;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Mutable holder of the result of a step, overwritten in place by
+ * {@link main.env.Environment#step(int, StepResult)} so that stepping
+ * allocates nothing. Unlike {@link Snapshot}, the state array is reused by
+ * every step, and should be copied by a caller keeping it.
+ */
+public final class StepResult {
+    private final float[] state;
+    private float reward;
+    private boolean mask;
+
+    public StepResult(int dim_of_state) {
+        this.state = new float[dim_of_state];
+    }
+
+    /**
+     * Overwrite the result in place.
+     * 
+     * @param state copied into the current state
+     * @param reward
+     * @param mask
+     */
+    public void set(float[] state, float reward, boolean mask) {
+        if (state.length != this.state.length) {
+            throw new IllegalArgumentException("Expected state of dimension " + this.state.length);
+        }
+        System.arraycopy(state, 0, this.state, 0, state.length);
+        this.reward = reward;
+        this.mask = mask;
+    }
+
+    /**
+     * Overwrite the result with a snapshot.
+     * 
+     * @param snapshot
+     */
+    public void set(Snapshot snapshot) {
+        set(snapshot.getState(), snapshot.getReward(), snapshot.isMasked());
+    }
+
+    /**
+     * Copy the result into an immutable snapshot.
+     * 
+     * @return snapshot
+     */
+    public Snapshot toSnapshot() {
+        return new Snapshot(state, reward, mask);
+    }
+
+    public float[] getState() {
+        return state;
+    }
+
+    public float getReward() {
+        return reward;
+    }
+
+    public boolean isMasked() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new ObjectMapper().writeValueAsString(Map.of("state", state, "reward", reward, "mask", mask));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package main.utils.datatype;
+
+import java.util.Arrays;
+
+/**
+ * A batch of snapshots, one per environment of a
+ * {@link main.env.BaseVectorEnvironment}. Unlike {@link Snapshot}, the arrays are
+ * not copied: the environment overwrites them in place on every step.
+ */
+public final class VectorSnapshot {
+    private final float[][] states;
+    private final float[] rewards;
+    private final boolean[] masks;
+
+    public VectorSnapshot(float[][] states, float[] rewards, boolean[] masks) {
+        if (states.length != rewards.length || states.length != masks.length) {
+            throw new IllegalArgumentException("Inconsistent number of environments");
+        }
+        this.states = states;
+        this.rewards = rewards;
+        this.masks = masks;
+    }
+
+    public float[][] getStates() {
+        return states;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getMasks() {
+        return masks;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    @Override
+    public String toString() {
+        return "{\"states\":" + Arrays.deepToString(states) + ",\"rewards\":" + Arrays.toString(rewards)
+                + ",\"masks\":" + Arrays.toString(masks) + "}";
+    }
+}
@@ -0,0 +1,46 @@
+package main.utils.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter, safe to increment from several threads.
+ */
+public final class Counter {
+    public static final Counter DISABLED = new Counter(false);
+
+    private final boolean enabled;
+    private final LongAdder total = new LongAdder();
+    private long flushed = 0;
+
+    Counter(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void increment() {
+        if (enabled) {
+            total.increment();
+        }
+    }
+
+    public void add(long delta) {
+        if (enabled) {
+            total.add(delta);
+        }
+    }
+
+    public long get() {
+        return total.sum();
+    }
+
+    /**
+     * Return the increment since the previous call.
+     * 
+     * @return increment
+     */
+    long flush() {
+        long current = total.sum();
+        long delta = current - flushed;
+        flushed = current;
+        return delta;
+    }
+}
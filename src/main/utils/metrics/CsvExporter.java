@@ -0,0 +1,45 @@
+package main.utils.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes one CSV row per metric and flush: timestamp, name, type, followed by
+ * the fields of {@link MetricValue}.
+ */
+public final class CsvExporter implements MetricsExporter {
+    private final Writer writer;
+
+    public CsvExporter(Path path) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    public CsvExporter(Writer writer) throws IOException {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+        this.writer.write("timestamp,name,type," + String.join(",", MetricValue.FIELDS) + "\n");
+    }
+
+    @Override
+    public void export(long timestamp_millis, List<MetricValue> values) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (MetricValue value : values) {
+            builder.append(timestamp_millis).append(',').append(value.getName()).append(',').append(value.getType());
+            for (String field : MetricValue.FIELDS) {
+                builder.append(',').append(value.get(field));
+            }
+            builder.append('\n');
+        }
+        writer.write(builder.toString());
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
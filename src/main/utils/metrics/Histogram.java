@@ -0,0 +1,126 @@
+package main.utils.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram with log-linear buckets: each power of two is split into
+ * SUB_BUCKETS linear buckets, so that quantiles are estimated within a relative
+ * error of 1 / SUB_BUCKETS without storing the values.
+ */
+public final class Histogram {
+    public static final Histogram DISABLED = new Histogram(false);
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int MIN_EXPONENT = -32;
+    private static final int MAX_EXPONENT = 64;
+    private static final int NUM_OF_BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS;
+
+    private final boolean enabled;
+    private final long[] positives;
+    private final long[] negatives;
+    private long zeros;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+
+    Histogram(boolean enabled) {
+        this.enabled = enabled;
+        this.positives = enabled ? new long[NUM_OF_BUCKETS] : null;
+        this.negatives = enabled ? new long[NUM_OF_BUCKETS] : null;
+        clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void record(double value) {
+        if (!enabled || Double.isNaN(value)) {
+            return;
+        }
+
+        if (value > 0) {
+            positives[bucket(value)]++;
+        } else if (value < 0) {
+            negatives[bucket(-value)]++;
+        } else {
+            zeros++;
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Summarize the values recorded since the previous call and clear them.
+     * 
+     * @param name
+     * @param type
+     * @param elapsed_seconds
+     * @return summary
+     */
+    synchronized MetricValue flush(String name, String type, double elapsed_seconds) {
+        MetricValue value = new MetricValue(name, type, count, count / elapsed_seconds, count > 0 ? sum / count : 0.0,
+                count > 0 ? min : 0.0, count > 0 ? max : 0.0, quantile(0.5), quantile(0.9), quantile(0.99), sum);
+        clear();
+        return value;
+    }
+
+    private double quantile(double q) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+
+        for (int i = NUM_OF_BUCKETS - 1; i >= 0; i--) {
+            seen += negatives[i];
+            if (seen >= rank) {
+                return Math.max(-midpoint(i), min);
+            }
+        }
+        seen += zeros;
+        if (seen >= rank) {
+            return 0.0;
+        }
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            seen += positives[i];
+            if (seen >= rank) {
+                return Math.min(midpoint(i), max);
+            }
+        }
+        return max;
+    }
+
+    private void clear() {
+        if (enabled) {
+            Arrays.fill(positives, 0);
+            Arrays.fill(negatives, 0);
+        }
+        zeros = 0;
+        count = 0;
+        sum = 0.0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    private static int bucket(double magnitude) {
+        int exponent = Math.getExponent(magnitude);
+        if (exponent < MIN_EXPONENT) {
+            return 0;
+        }
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_OF_BUCKETS - 1;
+        }
+        int sub_bucket = (int) ((Math.scalb(magnitude, -exponent) - 1.0) * SUB_BUCKETS);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub_bucket;
+    }
+
+    private static double midpoint(int bucket) {
+        int exponent = bucket / SUB_BUCKETS + MIN_EXPONENT;
+        double sub_bucket = bucket % SUB_BUCKETS + 0.5;
+        return Math.scalb(1.0 + sub_bucket / SUB_BUCKETS, exponent);
+    }
+}
@@ -0,0 +1,47 @@
+package main.utils.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes one JSON object per metric and flush, one object per line.
+ */
+public final class JsonLinesExporter implements MetricsExporter {
+    private static final ObjectWriter WRITER = new ObjectMapper().writer();
+
+    private final Writer writer;
+
+    public JsonLinesExporter(Path path) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    public JsonLinesExporter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    @Override
+    public void export(long timestamp_millis, List<MetricValue> values) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (MetricValue value : values) {
+            Map<String, Object> map = value.toMap();
+            map.put("timestamp", timestamp_millis);
+            builder.append(WRITER.writeValueAsString(map)).append('\n');
+        }
+        writer.write(builder.toString());
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,60 @@
+package main.utils.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of a metric over one flush interval. Counters report their
+ * increment as count and its rate per second, gauges report their current
+ * value, and histograms and timers (in nanoseconds) report the distribution
+ * of the recorded values.
+ */
+public final class MetricValue {
+    static final String[] FIELDS = new String[] { "count", "rate", "mean", "min", "max", "p50", "p90", "p99",
+            "value" };
+
+    private final String name;
+    private final String type;
+    private final double[] fields;
+
+    MetricValue(String name, String type, double... fields) {
+        this.name = name;
+        this.type = type;
+        this.fields = fields;
+    }
+
+    static MetricValue ofCounter(String name, long count, double elapsed_seconds, long total) {
+        return new MetricValue(name, "counter", count, count / elapsed_seconds, 0, 0, 0, 0, 0, 0, total);
+    }
+
+    static MetricValue ofGauge(String name, double value) {
+        return new MetricValue(name, "gauge", 0, 0, 0, 0, 0, 0, 0, 0, value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public double get(String field) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(field)) {
+                return fields[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown field " + field);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", name);
+        map.put("type", type);
+        for (int i = 0; i < FIELDS.length; i++) {
+            map.put(FIELDS[i], fields[i]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,141 @@
+package main.utils.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import ai.djl.ndarray.NDManager;
+
+/**
+ * Registry of counters, histograms, timers and gauges. Instruments are created
+ * once by name and then updated without any lookup; the instruments of
+ * {@link #DISABLED} are shared no-ops, so instrumented code costs a branch when
+ * metrics are off. Every flush summarizes the interval since the previous one
+ * and hands it to the exporter.
+ */
+public final class Metrics implements AutoCloseable {
+    public static final Metrics DISABLED = new Metrics(null, 0);
+
+    private final MetricsExporter exporter;
+    private final long flush_interval_nanos;
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new LinkedHashMap<>();
+
+    private long last_flush = System.nanoTime();
+
+    /**
+     * Create a registry.
+     * 
+     * @param exporter
+     * @param flush_interval_millis minimum time between two flushes in
+     *                              {@link #maybeFlush()}
+     */
+    public Metrics(MetricsExporter exporter, long flush_interval_millis) {
+        this.exporter = exporter;
+        this.flush_interval_nanos = TimeUnit.MILLISECONDS.toNanos(flush_interval_millis);
+    }
+
+    public boolean isEnabled() {
+        return exporter != null;
+    }
+
+    public synchronized Counter counter(String name) {
+        return isEnabled() ? counters.computeIfAbsent(name, key -> new Counter(true)) : Counter.DISABLED;
+    }
+
+    public synchronized Histogram histogram(String name) {
+        return isEnabled() ? histograms.computeIfAbsent(name, key -> new Histogram(true)) : Histogram.DISABLED;
+    }
+
+    public synchronized Timer timer(String name) {
+        return isEnabled() ? timers.computeIfAbsent(name, key -> new Timer(new Histogram(true))) : Timer.DISABLED;
+    }
+
+    /**
+     * Register a gauge, which is evaluated on the flushing thread.
+     * 
+     * @param name
+     * @param supplier
+     */
+    public synchronized void gauge(String name, DoubleSupplier supplier) {
+        if (isEnabled()) {
+            gauges.put(name, supplier);
+        }
+    }
+
+    /**
+     * Flush if the flush interval has elapsed since the previous flush.
+     */
+    public void maybeFlush() {
+        if (isEnabled() && System.nanoTime() - last_flush >= flush_interval_nanos) {
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        double seconds = Math.max(now - last_flush, 1L) * 1e-9;
+        last_flush = now;
+
+        List<MetricValue> values = new ArrayList<>();
+        counters.forEach((name, counter) -> values.add(MetricValue.ofCounter(name, counter.flush(), seconds,
+                counter.get())));
+        timers.forEach((name, timer) -> values.add(timer.getHistogram().flush(name, "timer", seconds)));
+        histograms.forEach((name, histogram) -> values.add(histogram.flush(name, "histogram", seconds)));
+        gauges.forEach((name, gauge) -> values.add(MetricValue.ofGauge(name, gauge.getAsDouble())));
+
+        try {
+            exporter.export(System.currentTimeMillis(), values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        flush();
+        try {
+            exporter.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Count the resources (arrays and sub managers) attached to the manager.
+     * 
+     * @param manager
+     * @return number of resources, or -1 if the engine does not expose them
+     */
+    public static long countResources(NDManager manager) {
+        for (Class<?> type = manager.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField("resources");
+                field.setAccessible(true);
+                Object resources = field.get(manager);
+                return resources instanceof Map ? ((Map<?, ?>) resources).size() : -1;
+            } catch (NoSuchFieldException e) {
+                continue;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+}
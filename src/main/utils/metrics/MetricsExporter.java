@@ -0,0 +1,14 @@
+package main.utils.metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the metrics summarized at each flush.
+ */
+public interface MetricsExporter extends AutoCloseable {
+    void export(long timestamp_millis, List<MetricValue> values) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
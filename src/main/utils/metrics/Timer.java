@@ -0,0 +1,34 @@
+package main.utils.metrics;
+
+/**
+ * Records durations in nanoseconds into a histogram. A disabled timer does not
+ * read the clock.
+ */
+public final class Timer {
+    public static final Timer DISABLED = new Timer(Histogram.DISABLED);
+
+    private final Histogram histogram;
+
+    Timer(Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * Start timing.
+     * 
+     * @return start time to be passed to {@link #stop(long)}
+     */
+    public long start() {
+        return histogram.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    public void stop(long start) {
+        if (histogram.isEnabled()) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    Histogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,126 @@
+package test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.env.BaseVectorEnvironment;
+import main.env.Environment;
+import main.env.VectorEnvironment;
+import main.env.cartpole.CartPole;
+import main.env.http.EnvironmentServer;
+import main.env.http.HttpEnvironment;
+import main.env.http.HttpVectorEnvironment;
+import main.env.http.WireProtocol;
+import main.utils.datatype.StepResult;
+import main.utils.datatype.VectorSnapshot;
+
+/**
+ * Check the http clients against local CartPoles through an
+ * {@link EnvironmentServer} on the loopback interface. The hosted and the
+ * local environments are seeded alike and take the same actions, so that the
+ * states, rewards and masks received with each {@link WireProtocol} must match
+ * the local ones exactly, including the episodes reset by the server.
+ */
+public class HttpEnvironmentCheck {
+    private static final int NUM_OF_ENVS = 4;
+    private static final int NUM_OF_STEPS = 300;
+    private static final long SEED = 7;
+
+    public static void main(String[] args) throws IOException {
+        for (WireProtocol protocol : WireProtocol.values()) {
+            try (EnvironmentServer server = EnvironmentServer.start(0, NUM_OF_ENVS, () -> new CartPole(false), 2)) {
+                checkVector(HttpVectorEnvironment.make(server.getAddress(), protocol), protocol);
+                for (int i = 0; i < NUM_OF_ENVS; i++) {
+                    checkSingle(HttpEnvironment.make(server.getAddress(), i, protocol), protocol);
+                }
+            }
+            System.out.println(protocol + ": OK");
+        }
+    }
+
+    private static void checkVector(HttpVectorEnvironment remote, WireProtocol protocol) {
+        check(remote.getProtocol() == protocol, "Negotiated " + remote.getProtocol() + " instead of " + protocol);
+        BaseVectorEnvironment local = VectorEnvironment.make(NUM_OF_ENVS, () -> new CartPole(false));
+        check(remote.size() == local.size() && remote.DimOfStateSpace() == local.DimOfStateSpace()
+                && remote.NumOfActions() == local.NumOfActions(), "Mismatched spaces");
+        remote.seed(SEED);
+        local.seed(SEED);
+
+        assertEquals(local.reset(), remote.reset(), "reset");
+        int[] actions = new int[NUM_OF_ENVS];
+        int num_of_masks = 0;
+        for (int step = 0; step < NUM_OF_STEPS; step++) {
+            for (int i = 0; i < NUM_OF_ENVS; i++) {
+                actions[i] = nextAction(step, i);
+            }
+            VectorSnapshot expected = local.step(actions);
+            assertEquals(expected, remote.step(actions), "step " + step);
+            for (boolean mask : expected.getMasks()) {
+                num_of_masks += mask ? 1 : 0;
+            }
+        }
+        check(num_of_masks > 0, "No episode terminated");
+    }
+
+    private static void checkSingle(HttpEnvironment remote, WireProtocol protocol) {
+        check(remote.getProtocol() == protocol, "Negotiated " + remote.getProtocol() + " instead of " + protocol);
+        Environment local = new CartPole(false);
+        remote.seed(SEED);
+        local.seed(SEED);
+
+        StepResult expected = new StepResult(local.DimOfStateSpace());
+        StepResult actual = new StepResult(remote.DimOfStateSpace());
+        local.reset(expected);
+        remote.reset(actual);
+        assertEquals(expected, actual, "reset");
+        for (int step = 0; step < NUM_OF_STEPS; step++) {
+            local.step(nextAction(step, 0), expected);
+            if (step % 2 == 0) {
+                remote.step(nextAction(step, 0), actual);
+            } else {
+                remote.stepAsync(nextAction(step, 0), actual).join();
+            }
+            assertEquals(expected, actual, "step " + step);
+            if (expected.isMasked()) {
+                local.reset(expected);
+                remote.reset(actual);
+                assertEquals(expected, actual, "reset after step " + step);
+            }
+        }
+    }
+
+    /**
+     * Push the cart alternately, with a bias depending on the environment, so
+     * that the episodes end at different steps.
+     * 
+     * @param step
+     * @param env
+     * @return action
+     */
+    private static int nextAction(int step, int env) {
+        return (step + step / (env + 2)) % 2;
+    }
+
+    private static void assertEquals(VectorSnapshot expected, VectorSnapshot actual, String context) {
+        for (int i = 0; i < expected.getStates().length; i++) {
+            check(Arrays.equals(expected.getStates()[i], actual.getStates()[i]),
+                    context + ": state " + i + " " + Arrays.toString(actual.getStates()[i]) + " instead of "
+                            + Arrays.toString(expected.getStates()[i]));
+        }
+        check(Arrays.equals(expected.getRewards(), actual.getRewards()), context + ": rewards "
+                + Arrays.toString(actual.getRewards()) + " instead of " + Arrays.toString(expected.getRewards()));
+        check(Arrays.equals(expected.getMasks(), actual.getMasks()), context + ": masks "
+                + Arrays.toString(actual.getMasks()) + " instead of " + Arrays.toString(expected.getMasks()));
+    }
+
+    private static void assertEquals(StepResult expected, StepResult actual, String context) {
+        check(Arrays.equals(expected.getState(), actual.getState()) && expected.getReward() == actual.getReward()
+                && expected.isMasked() == actual.isMasked(), context + ": " + actual + " instead of " + expected);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -6,11 +6,16 @@ import main.agent.A2C;
 import main.agent.DQN;
 import main.agent.DynaQ;
 import main.agent.GAE;
+import main.agent.LinearQ;
 import main.agent.PPO;
 import main.agent.QRDQN;
+import main.agent.encoder.TileCoder;
+import main.env.BaseVectorEnvironment;
 import main.env.Environment;
 import main.env.cartpole.CartPole;
+import main.utils.ParallelRunner;
 import main.utils.Runner;
+import main.utils.VectorRunner;
 
 public class Main {
     public static void main(String[] args) throws TranslateException {
@@ -24,10 +29,24 @@ public class Main {
         new Runner(new DynaQ(env.getStateSpace(), env.NumOfActions(), 8, 0.1f, 0.99f, 0.05f, 8), env).run(goal);
     }
 
+    public static void runLinearQ(Environment env, int goal) {
+        new Runner(new LinearQ(new TileCoder(env.getStateSpace(), 8, 8, 65536), env.NumOfActions(), 0.5f, 0.99f,
+                0.05f), env).run(goal);
+    }
+
     public static void runDQN(Environment env, int goal) {
         new Runner(new DQN(env.DimOfStateSpace(), env.NumOfActions(), 64, 32, 32, 0.99f, 0.001f), env).run(goal);
     }
 
+    public static void runDQN(BaseVectorEnvironment env, int goal) {
+        new VectorRunner(new DQN(env.DimOfStateSpace(), env.NumOfActions(), 64, 32, 32, 0.99f, 0.001f), env).run(goal);
+    }
+
+    public static void runParallelDQN(int num_of_actors, int goal) {
+        new ParallelRunner(new DQN(4, 2, 64, 32, 32, 0.99f, 0.001f), () -> new CartPole(false), num_of_actors, 1024)
+                .run(goal);
+    }
+
     public static void runA2C(Environment env, int goal) {
         new Runner(new A2C(env.DimOfStateSpace(), env.NumOfActions(), 64, 0.99f, 0.001f), env).run(goal);
     }
@@ -44,4 +63,9 @@ public class Main {
         new Runner(new PPO(env.DimOfStateSpace(), env.NumOfActions(), 64, 0.99f, 0.95f, 0.001f, 16, 8, 0.2f), env)
                 .run(goal);
     }
+
+    public static void runPPO(BaseVectorEnvironment env, int goal) {
+        new VectorRunner(new PPO(env.DimOfStateSpace(), env.NumOfActions(), 64, 0.99f, 0.95f, 0.001f, 4, 64, 0.2f,
+                true, 256), env).run(goal);
+    }
 }